@@ -0,0 +1,73 @@
+package org.embulk.filter.base58;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base58CodecBenchmark
+{
+    private static final int VALUE_COUNT = 1024; // power of two, see next()
+
+    // Input width in bytes: ObjectId, UUID, SHA-256 and a width without a dedicated kernel
+    @Param({"12", "16", "32", "20"})
+    public int width;
+
+    @Param({"", "obj_"})
+    public String prefix;
+
+    private String[] hexValues;
+    private String[] base58Values;
+    private int index;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(58);
+        hexValues = new String[VALUE_COUNT];
+        base58Values = new String[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            byte[] value = new byte[width];
+            random.nextBytes(value);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : value) {
+                hex.append(String.format("%02x", b));
+            }
+            hexValues[i] = hex.toString();
+            base58Values[i] = Base58.encodeWithPrefix(hexValues[i], prefix);
+        }
+    }
+
+    private int next()
+    {
+        return index = (index + 1) & (VALUE_COUNT - 1);
+    }
+
+    @Benchmark
+    public String encode()
+    {
+        return Base58.encodeWithPrefix(hexValues[next()], prefix);
+    }
+
+    @Benchmark
+    public String decode()
+    {
+        return Base58.decodeWithPrefix(base58Values[next()], prefix);
+    }
+}
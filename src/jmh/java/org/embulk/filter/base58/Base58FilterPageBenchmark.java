@@ -0,0 +1,145 @@
+package org.embulk.filter.base58;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.filter.base58.PageFixtures.DiscardPageOutput;
+import org.embulk.filter.base58.PageFixtures.PageSnapshot;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageTestUtils;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+
+// Measures PageOutput.add of the filter. One operation is one record.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base58FilterPageBenchmark
+{
+    private static final int ROW_COUNT = 4096;
+    private static final Type[] PASSTHROUGH_TYPES = {STRING, LONG, DOUBLE, TIMESTAMP};
+
+    @Param({"4", "16", "60"})
+    public int columnCount;
+
+    // Share of the columns that are base58 encoded, the rest are passed through
+    @Param({"0.1", "0.5", "1.0"})
+    public double conversionRatio;
+
+    private EmbulkTestRuntime runtime;
+    private PageOutput output;
+    private List<PageSnapshot> snapshots;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        runtime = new EmbulkTestRuntime();
+        Exec.doWith(runtime.getExec(), () -> {
+            prepare();
+            return null;
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Exec.doWith(runtime.getExec(), () -> {
+            output.finish();
+            output.close();
+            return null;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void addPages()
+    {
+        for (PageSnapshot snapshot : snapshots) {
+            output.add(snapshot.toPage());
+        }
+    }
+
+    private void prepare()
+    {
+        int convertedCount = Math.max(1, (int) Math.round(columnCount * conversionRatio));
+        Schema.Builder schemaBuilder = Schema.builder();
+        StringBuilder yaml = new StringBuilder("type: base58\ncolumns:\n");
+        for (int i = 0; i < columnCount; i++) {
+            if (i < convertedCount) {
+                schemaBuilder.add("id_" + i, STRING);
+                yaml.append("  - {name: id_").append(i).append("}\n");
+            } else {
+                schemaBuilder.add("col_" + i, PASSTHROUGH_TYPES[i % PASSTHROUGH_TYPES.length]);
+            }
+        }
+        final Schema inputSchema = schemaBuilder.build();
+
+        Random random = new Random(58);
+        Object[] values = new Object[ROW_COUNT * columnCount];
+        for (int row = 0, v = 0; row < ROW_COUNT; row++) {
+            for (int i = 0; i < columnCount; i++, v++) {
+                Type type = PASSTHROUGH_TYPES[i % PASSTHROUGH_TYPES.length];
+                if (i < convertedCount) {
+                    values[v] = randomObjectId(random);
+                }
+                else if (LONG.equals(type)) {
+                    values[v] = random.nextLong();
+                }
+                else if (DOUBLE.equals(type)) {
+                    values[v] = random.nextDouble();
+                }
+                else if (TIMESTAMP.equals(type)) {
+                    values[v] = Timestamp.ofEpochSecond(1400000000L + random.nextInt(100000000));
+                }
+                else {
+                    values[v] = "value " + random.nextInt();
+                }
+            }
+        }
+
+        snapshots = new ArrayList<>();
+        for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values)) {
+            snapshots.add(new PageSnapshot(page));
+        }
+
+        ConfigSource config = new ConfigLoader(Exec.getModelManager()).fromYamlString(yaml.toString());
+        final Base58FilterPlugin plugin = new Base58FilterPlugin();
+        plugin.transaction(config, inputSchema, (TaskSource taskSource, Schema outputSchema) ->
+                output = plugin.open(taskSource, inputSchema, outputSchema, new DiscardPageOutput()));
+    }
+
+    private static String randomObjectId(Random random)
+    {
+        return String.format("%08x%08x%08x", random.nextInt(), random.nextInt(), random.nextInt());
+    }
+}
@@ -0,0 +1,87 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+
+// The 58 digit characters, with tables built once so that every lookup is a single array index
+public final class Alphabet
+{
+    public static final Alphabet BITCOIN = new Alphabet("bitcoin", "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz");
+    public static final Alphabet FLICKR = new Alphabet("flickr", "123456789abcdefghijkmnopqrstuvwxyzABCDEFGHJKLMNPQRSTUVWXYZ");
+    public static final Alphabet RIPPLE = new Alphabet("ripple", "rpshnaf39wBUDNEGHJKLM4PQRST7VWXYZ2bcdeCg65jkm8oFqi1tuvAxyz");
+
+    private final String name;
+    private final char[] encodeTable; // digit -> char
+    private final byte[] decodeTable = new byte[128]; // ascii char -> digit, -1 if invalid
+
+    private Alphabet(String name, String chars)
+    {
+        this.name = name;
+        this.encodeTable = chars.toCharArray();
+        for (int i = 0; i < decodeTable.length; i++) {
+            decodeTable[i] = -1;
+        }
+        for (int i = 0; i < encodeTable.length; i++) {
+            decodeTable[encodeTable[i]] = (byte) i;
+        }
+    }
+
+    char[] getEncodeTable()
+    {
+        return encodeTable;
+    }
+
+    byte[] getDecodeTable()
+    {
+        return decodeTable;
+    }
+
+    // Whether strings of the same length sort like the numbers they encode
+    boolean isInAsciiOrder()
+    {
+        for (int i = 1; i < encodeTable.length; i++) {
+            if (encodeTable[i - 1] >= encodeTable[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The digit zero, which also stands for each leading zero byte
+    char getZero()
+    {
+        return encodeTable[0];
+    }
+
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // A named alphabet, or the 58 characters of a custom one
+    @JsonCreator
+    public static Alphabet fromString(String value)
+    {
+        for (Alphabet alphabet : new Alphabet[] {BITCOIN, FLICKR, RIPPLE}) {
+            if (alphabet.name.equals(value)) {
+                return alphabet;
+            }
+        }
+
+        boolean[] seen = new boolean[128];
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 128 || seen[c]) {
+                throw new ConfigException("Invalid alphabet `" + value + "`. Expected bitcoin, flickr, ripple or 58 distinct ascii characters");
+            }
+            seen[c] = true;
+        }
+        if (value.length() != 58) {
+            throw new ConfigException("Invalid alphabet `" + value + "`. Expected bitcoin, flickr, ripple or 58 distinct ascii characters");
+        }
+        return new Alphabet(value, value);
+    }
+}
@@ -1,75 +1,54 @@
 package org.embulk.filter.base58;
 
-import java.math.BigInteger;
-
 final class Base58
 {
     private Base58()
     {
     }
 
-    private static final String BASE_58_CHARS = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz"; // Base-58 char library
-    private static final BigInteger ZERO = new BigInteger("0");
-    private static final BigInteger FIFTY_EIGHT = new BigInteger("58");
+    // Scratch buffers are reused per thread, so the only allocation is the resulting String
+    private static final ThreadLocal<Base58Codec> CODEC = ThreadLocal.withInitial(Base58Codec::new);
 
     public static String encode(String hex)
     {
-        String originalHex = hex;
-
-        BigInteger numeric = new BigInteger(hex, 16);
-        String output = "";
-
-        while (numeric.compareTo(ZERO) == 1) {
-            BigInteger remainder = numeric.mod(FIFTY_EIGHT);
-            numeric = numeric.divide(FIFTY_EIGHT);
-            output = BASE_58_CHARS.charAt(Integer.parseInt(remainder.toString())) + output;
-        }
-
-        //leading zeros
-        for (int i = 0; i < originalHex.length() && originalHex.substring(i, 2).equals("00"); i += 2) {
-            output = "1" + output;
-        }
-
-        return output;
+        return encodeWithPrefix(hex, "");
     }
 
     public static String decode(String base58Value)
     {
-        String originalBase58 = base58Value;
-
         // Ignore bogus base58 strings
-        if (base58Value.matches("[^1-9A-HJ-NP-Za-km-z]")) {
-            return null;
-        }
-
-        BigInteger output = new BigInteger("0");
-
-        for (int i = 0; i < base58Value.length(); i++) {
-            int current = BASE_58_CHARS.indexOf(base58Value.charAt(i));
-            output = output.multiply(FIFTY_EIGHT).add(new BigInteger(current + ""));
-        }
-
-        String hex = output.toString(16);
-
-        // Leading zeros
-        for (int ii = 0; ii < originalBase58.length() && originalBase58.charAt(ii) == '1'; ii++) {
-            hex = "00" + hex;
-        }
+        return CODEC.get().decode(base58Value);
+    }
 
-        if (hex.length() % 2 != 0) {
-            hex = "0" + hex;
+    public static String encodeWithPrefix(String hex, String prefix)
+    {
+        String output = CODEC.get().encode(hex, prefix);
+        if (output == null) {
+            throw new NumberFormatException("Invalid hex value: \"" + hex + "\"");
         }
+        return output;
+    }
 
-        return hex.toLowerCase();
+    // The prefix is only stripped from the start of the value
+    public static String decodeWithPrefix(String baseValue, String prefix)
+    {
+        int start = baseValue.startsWith(prefix) ? prefix.length() : 0;
+        return CODEC.get().decode(baseValue, start, baseValue.length());
     }
 
-    public static String encodeWithPrefix(String hex, String prefix)
+    // Base58Check: the payload followed by the first 4 bytes of its double SHA-256
+    public static String encodeChecked(String hex)
     {
-        return prefix + encode(hex);
+        String output = CODEC.get().encodeChecked(hex, InputFormat.HEX, "");
+        if (output == null) {
+            throw new NumberFormatException("Invalid hex value: \"" + hex + "\"");
+        }
+        return output;
     }
 
-    public static String decodeWithPrefix(String baseValue, String prefix)
+    // Returns null for bogus base58 strings and wrong checksums
+    public static String decodeChecked(String base58Value)
     {
-        return decode(baseValue.replace(prefix, ""));
+        return CODEC.get().decodeChecked(base58Value, 0, base58Value.length(), OutputFormat.HEX);
     }
-}
\ No newline at end of file
+}
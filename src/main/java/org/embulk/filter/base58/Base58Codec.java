@@ -0,0 +1,1111 @@
+package org.embulk.filter.base58;
+
+import java.math.BigInteger;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Table-driven base58 engine for one alphabet, working on reusable scratch buffers.
+// Instances are not thread-safe: keep one per task (or per thread).
+final class Base58Codec
+{
+    private static final byte[] HEX_TABLE = new byte[128]; // ascii char -> nibble, -1 if invalid
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final char[] UPPER_HEX_CHARS = "0123456789ABCDEF".toCharArray();
+    private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] BASE64_TABLE = new byte[128]; // ascii char -> sextet, -1 if invalid
+
+    // Widths (in bytes) with dedicated kernels: ObjectId, UUID and 256-bit digests
+    static final int ANY_WIDTH = 0;
+    static final int OBJECT_ID_WIDTH = 12;
+    static final int UUID_WIDTH = 16;
+    static final int DIGEST_WIDTH = 32;
+
+    // The kernels work on 32-bit limbs held in longs and move five base58 digits per division,
+    // so a remainder (< 58^5 < 2^30) shifted over a limb always fits in a long
+    private static final long CHUNK = 58L * 58 * 58 * 58 * 58;
+    private static final int CHUNK_DIGITS = 5;
+    private static final long[] POWERS = {1, 58, 58 * 58, 58 * 58 * 58, 58L * 58 * 58 * 58, CHUNK};
+    private static final long LIMB_MASK = 0xffffffffL;
+
+    private static final int CHECKSUM_LENGTH = 4;
+    private static final double LOG2_58 = Math.log(58) / Math.log(2);
+
+    // Above these sizes the conversions split the value recursively by 58^(2^k) with BigInteger,
+    // whose multiplication and division are subquadratic, instead of going digit by digit
+    static final int LARGE_BYTES = 40;
+    static final int LARGE_DIGITS = 55;
+    private static final int LONG_DIGITS = 10; // 58^10 < 2^63
+
+    // 58^(2^k) at index k, grown on demand and shared by all codecs
+    private static volatile BigInteger[] squaredPowers = {BigInteger.valueOf(58)};
+
+    static {
+        for (int i = 0; i < 128; i++) {
+            HEX_TABLE[i] = -1;
+        }
+        for (int i = 0; i < 10; i++) {
+            HEX_TABLE['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_TABLE['a' + i] = (byte) (10 + i);
+            HEX_TABLE['A' + i] = (byte) (10 + i);
+        }
+        String base64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < 128; i++) {
+            BASE64_TABLE[i] = (byte) base64.indexOf(i);
+        }
+        BASE64_TABLE['+'] = 62;
+        BASE64_TABLE['-'] = 62;
+        BASE64_TABLE['/'] = 63;
+        BASE64_TABLE['_'] = 63;
+    }
+
+    private final char[] encodeTable; // base58 digit -> char
+    private final byte[] decodeTable; // ascii char -> base58 digit, -1 if invalid
+    private final char zero;
+
+    private byte[] bytes = new byte[32]; // big-endian value bytes
+    private byte[] digits = new byte[48]; // little-endian base58 digits
+    private char[] chars = new char[80]; // output characters
+    private final long[] limbs = new long[8]; // little-endian 32-bit limbs for the decode kernels
+    private long decodedLong; // result of the last successful decodeLong()
+    private MessageDigest sha256; // created on the first checksum
+    private final byte[] hash = new byte[32];
+    private final MessageDigest[] digests = new MessageDigest[HashFunction.values().length]; // created on first use
+    private byte[] utf8 = new byte[64]; // value bytes to hash
+
+    Base58Codec()
+    {
+        this(Alphabet.BITCOIN);
+    }
+
+    Base58Codec(Alphabet alphabet)
+    {
+        this.encodeTable = alphabet.getEncodeTable();
+        this.decodeTable = alphabet.getDecodeTable();
+        this.zero = alphabet.getZero();
+    }
+
+    // Returns null when the value is not valid hex
+    String encode(String hex)
+    {
+        return encode(hex, "");
+    }
+
+    String encode(String hex, String prefix)
+    {
+        return encode(hex, prefix, ANY_WIDTH);
+    }
+
+    // width restricts the fixed-width kernels to values of that many bytes; ANY_WIDTH detects them
+    String encode(String hex, String prefix, int width)
+    {
+        int byteCount = parseHex(hex, 0, hex.length());
+        if (byteCount < 0) {
+            return null;
+        }
+
+        // A leading "00" is represented by a single '1', matching the original encoder
+        int zeros = hex.length() >= 2 && hex.charAt(0) == '0' && hex.charAt(1) == '0' ? 1 : 0;
+        return encodeBytes(byteCount, zeros, prefix, width);
+    }
+
+    // Parses the value straight into bytes. Apart from hex, every leading zero byte becomes a '1'.
+    // Returns null when the value is not valid in that format.
+    String encode(String value, InputFormat format, String prefix, int width)
+    {
+        if (format == InputFormat.HEX) {
+            return encode(value, prefix, width);
+        }
+        int byteCount = parse(value, format);
+        if (byteCount < 0) {
+            return null;
+        }
+        return encodeBytes(byteCount, countZeroBytes(byteCount), prefix, width);
+    }
+
+    // Base58Check: appends the checksum to the payload, and every leading zero byte becomes a '1', hex included.
+    // Returns null when the value is not valid in that format.
+    String encodeChecked(String value, InputFormat format, String prefix)
+    {
+        int byteCount = format == InputFormat.HEX ? parseHex(value, 0, value.length()) : parse(value, format);
+        if (byteCount < 0) {
+            return null;
+        }
+
+        byte[] buffer = ensureBytes(byteCount + CHECKSUM_LENGTH);
+        doubleSha256(buffer, byteCount);
+        System.arraycopy(hash, 0, buffer, byteCount, CHECKSUM_LENGTH);
+        byteCount += CHECKSUM_LENGTH;
+        return encodeBytes(byteCount, countZeroBytes(byteCount), prefix, ANY_WIDTH);
+    }
+
+    // Base58Check of the 8 big-endian bytes of an unsigned 64-bit value, which decodeLongChecked() reverses
+    String encodeChecked(long value, String prefix)
+    {
+        byte[] buffer = ensureBytes(8 + CHECKSUM_LENGTH);
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        doubleSha256(buffer, 8);
+        System.arraycopy(hash, 0, buffer, 8, CHECKSUM_LENGTH);
+        return encodeBytes(8 + CHECKSUM_LENGTH, countZeroBytes(8 + CHECKSUM_LENGTH), prefix, ANY_WIDTH);
+    }
+
+    // Parses the value into the byte buffer. Returns the byte count, or -1 if invalid.
+    private int parse(String value, InputFormat format)
+    {
+        switch (format) {
+            case HEX:
+                return parseHex(value, 0, value.length());
+            case BASE64:
+                return parseBase64(value);
+            case UUID:
+                return parseUuid(value);
+            case DECIMAL:
+                return parseDecimal(value);
+            default:
+                throw new AssertionError(format);
+        }
+    }
+
+    private int countZeroBytes(int byteCount)
+    {
+        int zeros = 0;
+        while (zeros < byteCount && bytes[zeros] == 0) {
+            zeros++;
+        }
+        return zeros;
+    }
+
+    // Double SHA-256 of the first bytes of the byte buffer, into hash
+    private void doubleSha256(byte[] buffer, int length)
+    {
+        try {
+            if (sha256 == null) {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            }
+            sha256.update(buffer, 0, length);
+            sha256.digest(hash, 0, hash.length);
+            sha256.update(hash, 0, hash.length);
+            sha256.digest(hash, 0, hash.length);
+        } catch (NoSuchAlgorithmException | DigestException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    // Encodes the digest of the value's UTF-8 bytes. Every leading zero byte of the digest becomes a '1'.
+    String encodeHash(String value, HashFunction function, String prefix)
+    {
+        int length = utf8(value);
+        int byteCount = function.getLength();
+        byte[] buffer = ensureBytes(byteCount);
+        if (function == HashFunction.MURMUR3_128) {
+            Murmur3.hash128(utf8, length, buffer, 0);
+        } else {
+            try {
+                MessageDigest digest = digests[function.ordinal()];
+                if (digest == null) {
+                    digest = MessageDigest.getInstance(function.getAlgorithm());
+                    digests[function.ordinal()] = digest;
+                }
+                digest.update(utf8, 0, length);
+                digest.digest(buffer, 0, byteCount);
+            } catch (NoSuchAlgorithmException | DigestException e) {
+                throw new IllegalStateException(e); // every JVM has these
+            }
+        }
+        return encodeBytes(byteCount, countZeroBytes(byteCount), prefix, ANY_WIDTH);
+    }
+
+    // Writes the UTF-8 bytes of the value into utf8, without a byte[] per value. Returns the length.
+    private int utf8(String value)
+    {
+        int length = value.length();
+        if (utf8.length < length * 3) {
+            utf8 = new byte[Math.max(length * 3, utf8.length * 2)];
+        }
+        byte[] out = utf8;
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xc0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                out[pos++] = '?'; // unpaired, as String.getBytes(UTF_8) writes it
+            } else {
+                out[pos++] = (byte) (0xe0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+
+    // Encodes an unsigned 64-bit value with plain long arithmetic. Zero encodes as "1".
+    String encode(long value, String prefix)
+    {
+        return writeDigits(0, longToDigits(value), prefix);
+    }
+
+    // Writes the little-endian digits of an unsigned 64-bit value. Zero yields one digit.
+    private int longToDigits(long value)
+    {
+        byte[] out = ensureDigits(11); // 58^11 > 2^64
+        int digitCount = 0;
+        if (value < 0) {
+            // Unsigned division for the top bit, then the rest fits in a signed long
+            long quotient = (value >>> 1) / 29;
+            out[digitCount++] = (byte) (value - quotient * 58);
+            value = quotient;
+        }
+        do {
+            out[digitCount++] = (byte) (value % 58);
+            value /= 58;
+        } while (value != 0);
+        return digitCount;
+    }
+
+    private String encodeBytes(int byteCount, int zeros, String prefix, int width)
+    {
+        return writeDigits(zeros, toDigitsAnyWidth(byteCount, width), prefix);
+    }
+
+    // Converts the byte buffer into little-endian digits, with the kernel for its width if there is one
+    private int toDigitsAnyWidth(int byteCount, int width)
+    {
+        int digitCount;
+        if (width != ANY_WIDTH && width != byteCount) {
+            digitCount = toDigits(byteCount);
+        }
+        else if (byteCount == OBJECT_ID_WIDTH) {
+            digitCount = encode96();
+        }
+        else if (byteCount == UUID_WIDTH) {
+            digitCount = encode128();
+        }
+        else if (byteCount == DIGEST_WIDTH) {
+            digitCount = encode256();
+        }
+        else {
+            digitCount = toDigits(byteCount);
+        }
+        return digitCount;
+    }
+
+    // Writes the prefix, the leading '1's and the digits (most significant first) into a String
+    private String writeDigits(int zeros, int digitCount, String prefix)
+    {
+        int prefixLength = prefix.length();
+        int length = prefixLength + zeros + digitCount;
+        char[] out = ensureChars(length);
+        prefix.getChars(0, prefixLength, out, 0);
+        int pos = prefixLength;
+        for (int i = 0; i < zeros; i++) {
+            out[pos++] = zero;
+        }
+        for (int i = digitCount - 1; i >= 0; i--) {
+            out[pos++] = encodeTable[digits[i]];
+        }
+        return new String(out, 0, length);
+    }
+
+    // Returns null when the value contains characters outside of the alphabet
+    String decode(String base58Value)
+    {
+        return decode(base58Value, 0, base58Value.length());
+    }
+
+    String decode(String base58Value, int start, int end)
+    {
+        return decode(base58Value, start, end, ANY_WIDTH);
+    }
+
+    String decode(String base58Value, int start, int end, int width)
+    {
+        return decode(base58Value, start, end, width, OutputFormat.HEX);
+    }
+
+    // Renders the decoded bytes straight into the output format. Returns null when the value contains
+    // characters outside of the alphabet, or doesn't fit the format. LONG output goes through decodeLong().
+    String decode(String base58Value, int start, int end, int width, OutputFormat format)
+    {
+        int zeros = leadingZeros(base58Value, start, end);
+        int byteCount = decodeValue(base58Value, start + zeros, end, width);
+        if (byteCount < 0) {
+            return null;
+        }
+
+        switch (format) {
+            case HEX:
+                return writeHex(zeros, byteCount, HEX_CHARS);
+            case HEX_UPPER:
+                return writeHex(zeros, byteCount, UPPER_HEX_CHARS);
+            case UUID:
+                return writeUuid(zeros, byteCount);
+            case BASE64:
+                return writeBase64(zeros, byteCount);
+            default:
+                throw new AssertionError(format);
+        }
+    }
+
+    // Base58Check: verifies and removes the checksum, then renders the payload, leading zero bytes included.
+    // Returns null when the value is not valid base58, has a wrong checksum, or doesn't fit the format.
+    String decodeChecked(String base58Value, int start, int end, OutputFormat format)
+    {
+        int payloadLength = decodeCheckedPayload(base58Value, start, end);
+        if (payloadLength < 0) {
+            return null;
+        }
+
+        return writeBytes(payloadLength, format);
+    }
+
+    // Renders exactly that many bytes of the byte buffer, leading zero bytes included
+    private String writeBytes(int byteCount, OutputFormat format)
+    {
+        switch (format) {
+            case HEX:
+                return writeHex(0, byteCount, HEX_CHARS);
+            case HEX_UPPER:
+                return writeHex(0, byteCount, UPPER_HEX_CHARS);
+            case UUID:
+                return writeUuid(0, byteCount);
+            case BASE64:
+                return writeBase64(0, byteCount);
+            default:
+                throw new AssertionError(format);
+        }
+    }
+
+    // Base58Check version of decodeLong()
+    boolean decodeLongChecked(String base58Value, int start, int end)
+    {
+        int payloadLength = decodeCheckedPayload(base58Value, start, end);
+        if (payloadLength < 0) {
+            return false;
+        }
+
+        int zeros = countZeroBytes(payloadLength);
+        if (payloadLength - zeros > 8) {
+            return false;
+        }
+        long value = 0;
+        for (int i = zeros; i < payloadLength; i++) {
+            value = (value << 8) | (bytes[i] & 0xffL);
+        }
+        decodedLong = value;
+        return true;
+    }
+
+    // Leaves the payload, leading zero bytes included, at the start of the byte buffer.
+    // Returns its length, or -1 when the value is not valid base58 or the checksum doesn't match.
+    private int decodeCheckedPayload(String base58Value, int start, int end)
+    {
+        int zeros = leadingZeros(base58Value, start, end);
+        int byteCount = decodeValue(base58Value, start + zeros, end, ANY_WIDTH);
+        if (byteCount < 0 || zeros + byteCount < CHECKSUM_LENGTH) {
+            return -1;
+        }
+
+        int length = padBytes(byteCount, zeros + byteCount);
+        byte[] buffer = bytes;
+        int payloadLength = length - CHECKSUM_LENGTH;
+        doubleSha256(buffer, payloadLength);
+        for (int i = 0; i < CHECKSUM_LENGTH; i++) {
+            if (buffer[payloadLength + i] != hash[i]) {
+                return -1;
+            }
+        }
+        return payloadLength;
+    }
+
+    // Left-pads the value in the byte buffer with zero bytes up to that length, which it returns
+    private int padBytes(int byteCount, int length)
+    {
+        byte[] buffer = ensureBytes(length);
+        int padding = length - byteCount;
+        System.arraycopy(buffer, 0, buffer, padding, byteCount);
+        for (int i = 0; i < padding; i++) {
+            buffer[i] = 0;
+        }
+        return length;
+    }
+
+    // Sortable: every value of the same byte width is encoded with the same number of digits,
+    // left-padded with the zero digit, so that with an alphabet in ascii order the strings sort
+    // like the bytes. width fixes the byte width; with ANY_WIDTH it is the width of each value.
+    // Returns null when the value is not valid in that format, or wider than width.
+    String encodeSortable(String value, InputFormat format, String prefix, int width)
+    {
+        int byteCount = parse(value, format);
+        if (byteCount < 0 || (width != ANY_WIDTH && byteCount > width)) {
+            return null;
+        }
+
+        int digitCount = toDigitsAnyWidth(byteCount, width);
+        int sortableDigits = sortableDigits(width == ANY_WIDTH ? byteCount : width);
+        return writeDigits(sortableDigits - digitCount, digitCount, prefix);
+    }
+
+    // Sortable version of encode(long, String), always 11 digits
+    String encodeSortable(long value, String prefix)
+    {
+        int digitCount = longToDigits(value);
+        return writeDigits(sortableDigits(8) - digitCount, digitCount, prefix);
+    }
+
+    // Reverses encodeSortable(). Returns null when the value is not valid base58, or has a number of
+    // digits that no byte width (or not the given one) encodes to.
+    String decodeSortable(String base58Value, int start, int end, int width, OutputFormat format)
+    {
+        int digitCount = end - start;
+        int length = width == ANY_WIDTH ? sortableBytes(digitCount) : width;
+        if (length <= 0 || sortableDigits(length) != digitCount) {
+            return null;
+        }
+
+        // The padding is made of zero digits, which the arithmetic takes as they are
+        int byteCount = decodeValue(base58Value, start, end, width);
+        if (byteCount < 0 || byteCount > length) {
+            return null;
+        }
+        return writeBytes(padBytes(byteCount, length), format);
+    }
+
+    // Digits of the largest value of that many bytes: ceil(8 * byteCount / log2(58))
+    static int sortableDigits(int byteCount)
+    {
+        return (int) Math.ceil(byteCount * 8 / LOG2_58);
+    }
+
+    // The byte width that encodes to that many sortable digits, or -1 if none does.
+    // Each byte adds more than one digit, so there is at most one.
+    private static int sortableBytes(int digitCount)
+    {
+        int byteCount = (int) (digitCount * LOG2_58 / 8);
+        return sortableDigits(byteCount) == digitCount ? byteCount : -1;
+    }
+
+    // Decodes into an unsigned 64-bit value, read back with getDecodedLong(). Returns false when
+    // the value contains characters outside of the alphabet or doesn't fit in 64 bits.
+    boolean decodeLong(String base58Value, int start, int end)
+    {
+        int zeros = leadingZeros(base58Value, start, end);
+        int byteCount = decodeValue(base58Value, start + zeros, end, ANY_WIDTH);
+        if (byteCount < 0 || byteCount > 8) {
+            return false;
+        }
+
+        long value = 0;
+        for (int i = 0; i < byteCount; i++) {
+            value = (value << 8) | (bytes[i] & 0xffL);
+        }
+        decodedLong = value;
+        return true;
+    }
+
+    long getDecodedLong()
+    {
+        return decodedLong;
+    }
+
+    private int leadingZeros(String base58Value, int start, int end)
+    {
+        int zeros = 0;
+        while (start + zeros < end && base58Value.charAt(start + zeros) == zero) {
+            zeros++;
+        }
+        return zeros;
+    }
+
+    // Decodes the digits after the leading '1's into the byte buffer.
+    // Returns the minimal byte count (0 for zero), or -1 on an invalid character.
+    private int decodeValue(String base58Value, int start, int end, int width)
+    {
+        // Bad values are rejected before any arithmetic; the loops below trust every character
+        if (InputValidator.base58(base58Value, start, end, decodeTable) == InputValidator.Validity.INVALID) {
+            return -1;
+        }
+
+        int limbCount = decodeLimbCount(end - start, width);
+        if (limbCount > 0) {
+            int byteCount = fromDigitsInLimbs(base58Value, start, end, limbCount);
+            if (byteCount >= 0) {
+                return byteCount;
+            }
+        }
+        return fromDigits(base58Value, start, end);
+    }
+
+    // Every leading '1' becomes "00", and the value is always rendered as whole bytes
+    private String writeHex(int zeros, int byteCount, char[] hexChars)
+    {
+        int length = zeros * 2 + (byteCount == 0 ? 2 : byteCount * 2);
+        char[] out = ensureChars(length);
+        int pos = 0;
+        for (int i = 0; i < zeros; i++) {
+            out[pos++] = '0';
+            out[pos++] = '0';
+        }
+        if (byteCount == 0) {
+            out[pos++] = '0';
+            out[pos++] = '0';
+        }
+        for (int i = 0; i < byteCount; i++) {
+            int b = bytes[i] & 0xff;
+            out[pos++] = hexChars[b >>> 4];
+            out[pos++] = hexChars[b & 0x0f];
+        }
+        return new String(out, 0, length);
+    }
+
+    // Left-pads the value to 16 bytes; the leading '1's are part of that padding
+    private String writeUuid(int zeros, int byteCount)
+    {
+        if (zeros + byteCount > UUID_WIDTH) {
+            return null;
+        }
+
+        char[] out = ensureChars(36);
+        int padding = UUID_WIDTH - byteCount;
+        int pos = 0;
+        for (int i = 0; i < UUID_WIDTH; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                out[pos++] = '-';
+            }
+            int b = i < padding ? 0 : bytes[i - padding] & 0xff;
+            out[pos++] = HEX_CHARS[b >>> 4];
+            out[pos++] = HEX_CHARS[b & 0x0f];
+        }
+        return new String(out, 0, 36);
+    }
+
+    // Every leading '1' becomes a zero byte; an empty value is a single zero byte, as with hex
+    private String writeBase64(int zeros, int byteCount)
+    {
+        int total = Math.max(1, zeros + byteCount);
+        int padding = total - byteCount;
+        int length = (total + 2) / 3 * 4;
+        char[] out = ensureChars(length);
+        int pos = 0;
+        for (int i = 0; i < total; i += 3) {
+            int b0 = byteAt(i, padding);
+            int b1 = i + 1 < total ? byteAt(i + 1, padding) : 0;
+            int b2 = i + 2 < total ? byteAt(i + 2, padding) : 0;
+            out[pos++] = BASE64_CHARS[b0 >>> 2];
+            out[pos++] = BASE64_CHARS[(b0 & 0x03) << 4 | b1 >>> 4];
+            out[pos++] = i + 1 < total ? BASE64_CHARS[(b1 & 0x0f) << 2 | b2 >>> 6] : '=';
+            out[pos++] = i + 2 < total ? BASE64_CHARS[b2 & 0x3f] : '=';
+        }
+        return new String(out, 0, length);
+    }
+
+    // Byte of the value preceded by that many zero bytes
+    private int byteAt(int index, int padding)
+    {
+        return index < padding ? 0 : bytes[index - padding] & 0xff;
+    }
+
+    // Parses hex into the big-endian byte buffer. Returns the byte count, or -1 if invalid or empty.
+    private int parseHex(String hex, int start, int end)
+    {
+        if (InputValidator.hex(hex, start, end) != InputValidator.Validity.VALID) {
+            return -1;
+        }
+
+        int length = end - start;
+        int byteCount = (length + 1) >>> 1;
+        byte[] buffer = ensureBytes(byteCount);
+        int pos = start;
+        int b = 0;
+
+        // An odd number of nibbles means the first byte only holds one
+        if ((length & 1) != 0) {
+            buffer[b++] = HEX_TABLE[hex.charAt(pos++)];
+        }
+        while (pos < end) {
+            int hi = HEX_TABLE[hex.charAt(pos++)];
+            int lo = HEX_TABLE[hex.charAt(pos++)];
+            buffer[b++] = (byte) ((hi << 4) | lo);
+        }
+        return byteCount;
+    }
+
+    // Parses base64 (either alphabet, optional padding) into the byte buffer. Returns the byte count, or -1 if invalid.
+    private int parseBase64(String value)
+    {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == '=') {
+            end--;
+        }
+        if (end == 0 || end % 4 == 1 || value.length() - end > 2) {
+            return -1;
+        }
+
+        int byteCount = end * 3 / 4;
+        byte[] buffer = ensureBytes(byteCount);
+        int b = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < end; i++) {
+            char c = value.charAt(i);
+            int sextet = c < 128 ? BASE64_TABLE[c] : -1;
+            if (sextet < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[b++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return byteCount;
+    }
+
+    // Parses a canonical 8-4-4-4-12 UUID into 16 bytes. Returns 16, or -1 if invalid.
+    private int parseUuid(String value)
+    {
+        if (value.length() != 36
+                || value.charAt(8) != '-' || value.charAt(13) != '-'
+                || value.charAt(18) != '-' || value.charAt(23) != '-') {
+            return -1;
+        }
+
+        byte[] buffer = ensureBytes(UUID_WIDTH);
+        int b = 0;
+        for (int pos = 0; pos < 36; ) {
+            if (pos == 8 || pos == 13 || pos == 18 || pos == 23) {
+                pos++;
+                continue;
+            }
+            int hi = hexValue(value.charAt(pos++));
+            int lo = hexValue(value.charAt(pos++));
+            if ((hi | lo) < 0) {
+                return -1;
+            }
+            buffer[b++] = (byte) ((hi << 4) | lo);
+        }
+        return UUID_WIDTH;
+    }
+
+    // Parses an unsigned decimal integer into its minimal big-endian bytes (one zero byte for 0).
+    // Returns the byte count, or -1 if invalid.
+    private int parseDecimal(String value)
+    {
+        int length = value.length();
+        if (length == 0) {
+            return -1;
+        }
+
+        byte[] buffer = ensureBytes(length * 416 / 1000 + 1); // log(10) / log(256) = 0.4152
+        int size = 0; // little-endian while accumulating
+        int pos = 0;
+        int chunkLength = length % 9 == 0 ? 9 : length % 9;
+        while (pos < length) {
+            long carry = 0;
+            long multiplier = 1;
+            for (int i = 0; i < chunkLength; i++) {
+                char c = value.charAt(pos++);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                carry = carry * 10 + (c - '0');
+                multiplier *= 10;
+            }
+            for (int j = 0; j < size; j++) {
+                carry += (buffer[j] & 0xffL) * multiplier;
+                buffer[j] = (byte) carry;
+                carry >>>= 8;
+            }
+            while (carry > 0) {
+                buffer[size++] = (byte) carry;
+                carry >>>= 8;
+            }
+            chunkLength = 9;
+        }
+        if (size == 0) {
+            buffer[size++] = 0;
+        }
+
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+        return size;
+    }
+
+    // Converts the byte buffer into little-endian base58 digits. Zero yields no digits.
+    private int toDigits(int byteCount)
+    {
+        if (byteCount >= LARGE_BYTES) {
+            return toDigitsBySplitting(byteCount);
+        }
+
+        byte[] out = ensureDigits(byteCount * 138 / 100 + 1);
+        int size = 0;
+        for (int i = 0; i < byteCount; i++) {
+            int carry = bytes[i] & 0xff;
+            for (int j = 0; j < size; j++) {
+                carry += out[j] << 8;
+                out[j] = (byte) (carry % 58);
+                carry /= 58;
+            }
+            while (carry > 0) {
+                out[size++] = (byte) (carry % 58);
+                carry /= 58;
+            }
+        }
+        return size;
+    }
+
+    // Accumulates valid base58 digits into the byte buffer, most significant byte first.
+    // Returns the minimal byte count (0 for zero).
+    private int fromDigits(String value, int start, int end)
+    {
+        if (end - start >= LARGE_DIGITS) {
+            return fromDigitsBySplitting(value, start, end);
+        }
+
+        byte[] buffer = ensureBytes((end - start) * 733 / 1000 + 1);
+        int size = 0; // little-endian while accumulating
+        for (int i = start; i < end; i++) {
+            int carry = decodeTable[value.charAt(i)];
+            for (int j = 0; j < size; j++) {
+                carry += (buffer[j] & 0xff) * 58;
+                buffer[j] = (byte) carry;
+                carry >>>= 8;
+            }
+            while (carry > 0) {
+                buffer[size++] = (byte) carry;
+                carry >>>= 8;
+            }
+        }
+
+        // Flip to big-endian
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+        return size;
+    }
+
+    private int toDigitsBySplitting(int byteCount)
+    {
+        BigInteger value = new BigInteger(1, Arrays.copyOf(bytes, byteCount));
+        if (value.signum() == 0) {
+            return 0;
+        }
+
+        // Enough digits for any value of that many bytes, rounded up to a power of two
+        int k = 32 - Integer.numberOfLeadingZeros(byteCount * 138 / 100); // 2^k > byteCount * 1.38 >= digit count
+        byte[] out = ensureDigits(1 << k);
+        splitIntoDigits(value, k, out, 0);
+        return trimDigits(out, 1 << k);
+    }
+
+    // Writes exactly 2^k little-endian digits of a value below 58^(2^k)
+    private static void splitIntoDigits(BigInteger value, int k, byte[] out, int offset)
+    {
+        if (value.bitLength() < 63) {
+            long v = value.longValue();
+            for (int i = 0; i < 1 << k; i++) {
+                out[offset + i] = (byte) (v % 58);
+                v /= 58;
+            }
+            return;
+        }
+
+        BigInteger[] quotientAndRemainder = value.divideAndRemainder(squaredPower(k - 1));
+        splitIntoDigits(quotientAndRemainder[1], k - 1, out, offset);
+        splitIntoDigits(quotientAndRemainder[0], k - 1, out, offset + (1 << (k - 1)));
+    }
+
+    private int fromDigitsBySplitting(String value, int start, int end)
+    {
+        byte[] magnitude = joinDigits(value, start, end).toByteArray();
+        int signBytes = magnitude[0] == 0 ? 1 : 0;
+        int byteCount = magnitude.length - signBytes;
+        System.arraycopy(magnitude, signBytes, ensureBytes(byteCount), 0, byteCount);
+        return byteCount;
+    }
+
+    // Value of valid digits, most significant first: the low 2^k digits plus the rest times 58^(2^k)
+    private BigInteger joinDigits(String value, int start, int end)
+    {
+        int length = end - start;
+        if (length <= LONG_DIGITS) {
+            long v = 0;
+            for (int i = start; i < end; i++) {
+                v = v * 58 + decodeTable[value.charAt(i)];
+            }
+            return BigInteger.valueOf(v);
+        }
+
+        int k = 31 - Integer.numberOfLeadingZeros(length - 1);
+        int split = end - (1 << k);
+        return joinDigits(value, start, split).multiply(squaredPower(k)).add(joinDigits(value, split, end));
+    }
+
+    private static BigInteger squaredPower(int k)
+    {
+        BigInteger[] powers = squaredPowers;
+        if (k < powers.length) {
+            return powers[k];
+        }
+        synchronized (Base58Codec.class) {
+            powers = squaredPowers;
+            if (k >= powers.length) {
+                int known = powers.length;
+                powers = Arrays.copyOf(powers, k + 1);
+                for (int i = known; i <= k; i++) {
+                    powers[i] = powers[i - 1].multiply(powers[i - 1]);
+                }
+                squaredPowers = powers;
+            }
+            return powers[k];
+        }
+    }
+
+    private int encode96()
+    {
+        long l0 = limb(0);
+        long l1 = limb(4);
+        long l2 = limb(8);
+        byte[] out = ensureDigits(20);
+        int size = 0;
+        while ((l0 | l1 | l2) != 0) {
+            long r = l0 % CHUNK;
+            l0 /= CHUNK;
+            long cur = (r << 32) | l1;
+            l1 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l2;
+            l2 = cur / CHUNK;
+            r = cur % CHUNK;
+            size = putChunk(out, size, r);
+        }
+        return trimDigits(out, size);
+    }
+
+    private int encode128()
+    {
+        long l0 = limb(0);
+        long l1 = limb(4);
+        long l2 = limb(8);
+        long l3 = limb(12);
+        byte[] out = ensureDigits(25);
+        int size = 0;
+        while ((l0 | l1 | l2 | l3) != 0) {
+            long r = l0 % CHUNK;
+            l0 /= CHUNK;
+            long cur = (r << 32) | l1;
+            l1 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l2;
+            l2 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l3;
+            l3 = cur / CHUNK;
+            r = cur % CHUNK;
+            size = putChunk(out, size, r);
+        }
+        return trimDigits(out, size);
+    }
+
+    private int encode256()
+    {
+        long l0 = limb(0);
+        long l1 = limb(4);
+        long l2 = limb(8);
+        long l3 = limb(12);
+        long l4 = limb(16);
+        long l5 = limb(20);
+        long l6 = limb(24);
+        long l7 = limb(28);
+        byte[] out = ensureDigits(45);
+        int size = 0;
+        while ((l0 | l1 | l2 | l3 | l4 | l5 | l6 | l7) != 0) {
+            long r = l0 % CHUNK;
+            l0 /= CHUNK;
+            long cur = (r << 32) | l1;
+            l1 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l2;
+            l2 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l3;
+            l3 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l4;
+            l4 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l5;
+            l5 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l6;
+            l6 = cur / CHUNK;
+            r = cur % CHUNK;
+            cur = (r << 32) | l7;
+            l7 = cur / CHUNK;
+            r = cur % CHUNK;
+            size = putChunk(out, size, r);
+        }
+        return trimDigits(out, size);
+    }
+
+    // Big-endian 32-bit limb of the byte buffer
+    private long limb(int offset)
+    {
+        return ((bytes[offset] & 0xffL) << 24)
+                | ((bytes[offset + 1] & 0xffL) << 16)
+                | ((bytes[offset + 2] & 0xffL) << 8)
+                | (bytes[offset + 3] & 0xffL);
+    }
+
+    private static int putChunk(byte[] out, int size, long remainder)
+    {
+        int r = (int) remainder;
+        for (int i = 0; i < CHUNK_DIGITS; i++) {
+            out[size++] = (byte) (r % 58);
+            r /= 58;
+        }
+        return size;
+    }
+
+    private static int trimDigits(byte[] out, int size)
+    {
+        while (size > 0 && out[size - 1] == 0) {
+            size--;
+        }
+        return size;
+    }
+
+    // Number of limbs for the decode kernel, or 0 to use the generic path
+    private static int decodeLimbCount(int digitCount, int width)
+    {
+        // 58^17 < 2^100, 58^22 < 2^129 and 58^44 < 2^258, so values that still overflow
+        // the limbs can't be of that width and fall back to the generic path
+        if (width == ANY_WIDTH) {
+            if (digitCount <= 17) {
+                return 3;
+            }
+            else if (digitCount <= 22) {
+                return 4;
+            }
+            else if (digitCount <= 44) {
+                return 8;
+            }
+        }
+        else if (width == OBJECT_ID_WIDTH && digitCount <= 17) {
+            return 3;
+        }
+        else if (width == UUID_WIDTH && digitCount <= 22) {
+            return 4;
+        }
+        else if (width == DIGEST_WIDTH && digitCount <= 44) {
+            return 8;
+        }
+        return 0;
+    }
+
+    // Accumulates base58 digits into limbs five at a time and writes the minimal big-endian bytes.
+    // Takes valid digits. Returns the byte count, or -1 if the value overflows the limbs.
+    private int fromDigitsInLimbs(String value, int start, int end, int limbCount)
+    {
+        long[] acc = limbs;
+        for (int j = 0; j < limbCount; j++) {
+            acc[j] = 0;
+        }
+
+        int pos = start;
+        int chunkLength = (end - start) % CHUNK_DIGITS;
+        if (chunkLength == 0) {
+            chunkLength = CHUNK_DIGITS;
+        }
+        while (pos < end) {
+            long carry = 0;
+            for (int i = 0; i < chunkLength; i++) {
+                carry = carry * 58 + decodeTable[value.charAt(pos++)];
+            }
+            long multiplier = POWERS[chunkLength];
+            for (int j = 0; j < limbCount; j++) {
+                long t = acc[j] * multiplier + carry;
+                acc[j] = t & LIMB_MASK;
+                carry = t >>> 32;
+            }
+            if (carry != 0) {
+                return -1;
+            }
+            chunkLength = CHUNK_DIGITS;
+        }
+
+        int top = limbCount - 1;
+        while (top >= 0 && acc[top] == 0) {
+            top--;
+        }
+        if (top < 0) {
+            return 0;
+        }
+        int topBytes = acc[top] > 0xffffff ? 4 : acc[top] > 0xffff ? 3 : acc[top] > 0xff ? 2 : 1;
+        int byteCount = top * 4 + topBytes;
+        byte[] buffer = ensureBytes(byteCount);
+        int b = 0;
+        for (int shift = (topBytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[b++] = (byte) (acc[top] >>> shift);
+        }
+        for (int j = top - 1; j >= 0; j--) {
+            long l = acc[j];
+            buffer[b++] = (byte) (l >>> 24);
+            buffer[b++] = (byte) (l >>> 16);
+            buffer[b++] = (byte) (l >>> 8);
+            buffer[b++] = (byte) l;
+        }
+        return byteCount;
+    }
+
+    private static int hexValue(char c)
+    {
+        return c < 128 ? HEX_TABLE[c] : -1;
+    }
+
+    // Keeps the content, for checksums appended to or removed from a value already in the buffer
+    private byte[] ensureBytes(int size)
+    {
+        if (bytes.length < size) {
+            bytes = Arrays.copyOf(bytes, Math.max(size, bytes.length * 2));
+        }
+        return bytes;
+    }
+
+    private byte[] ensureDigits(int size)
+    {
+        if (digits.length < size) {
+            digits = new byte[Math.max(size, digits.length * 2)];
+        }
+        return digits;
+    }
+
+    private char[] ensureChars(int size)
+    {
+        if (chars.length < size) {
+            chars = new char[Math.max(size, chars.length * 2)];
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,523 @@
+package org.embulk.filter.base58;
+
+import org.embulk.config.ConfigException;
+import org.embulk.filter.base58.Base58FilterPlugin.Base58Column;
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.type.Types;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Encodes or decodes a string source column, or encodes a long source column, into an output column.
+// Decoded values are written as strings, or as longs with output_format: long. In a JSON column, the
+// values at json_path are converted and the rest of the document is left as it is.
+final class Base58ColumnConverter implements ColumnConverter
+{
+    // Marks a long held in longBatch; compared by identity
+    private static final String LONG_VALUE = new String("long");
+    // Marks a JSON value held in jsonBatch
+    private static final String JSON_VALUE = new String("json");
+
+    private final Column sourceColumn;
+    private final int sourceIndex;
+    private final int outputIndex;
+    private final boolean isLongSource;
+    private final JsonPath jsonPath; // null unless the source is a JSON column
+    private final boolean isEncode;
+    private final InputFormat inputFormat;
+    private final OutputFormat outputFormat;
+    private final boolean isLongOutput;
+    private final Alphabet alphabet;
+    private final String prefix; // added when encoding
+    private final List<String> prefixes; // stripped when decoding, if the value starts with one
+    private final PrefixTrie prefixTrie; // null without prefixes
+    private final int prefixOutputIndex; // column for the stripped prefix, -1 if none
+    private final int width;
+    private final boolean isChecked;
+    private final boolean isSortable;
+    private final HashFunction hash;
+    private final boolean isIdempotent;
+    private final String targetName;
+    private final Base58Codec codec;
+    private final ConversionCache cache;
+    private final PersistentConversionStore store; // null unless persistent_cache_path is set
+    private final ErrorPolicy errorPolicy;
+    private final ColumnMetrics metrics;
+
+    private String failureReason; // why the last convertUncached() returned null
+
+    // Column-batched mode: source values of the current page, converted in place
+    private String[] batch = new String[0];
+    private long[] longBatch = new long[0];
+    private Value[] jsonBatch = new Value[0];
+    private String[] prefixBatch = new String[0];
+    private int batchPosition;
+
+    Base58ColumnConverter(Base58Column base58Column, Column sourceColumn, Column outputColumn, Column prefixColumn,
+                          Base58Codec codec, DeadLetterWriter deadLetter, Logger logger)
+    {
+        this.sourceColumn = sourceColumn;
+        this.sourceIndex = sourceColumn.getIndex();
+        this.outputIndex = outputColumn.getIndex();
+        this.isEncode = base58Column.getIsEncode().or(true);
+        this.isLongSource = Types.LONG.equals(sourceColumn.getType());
+        boolean isJsonSource = Types.JSON.equals(sourceColumn.getType());
+        if (isJsonSource != base58Column.getJsonPath().isPresent()) {
+            throw new ConfigException("base58 column `" + base58Column.getName() + "` needs json_path if and only if it's a JSON column");
+        }
+        this.jsonPath = isJsonSource ? JsonPath.parse(base58Column.getJsonPath().get()) : null;
+        if (isLongSource && base58Column.getInputFormat().isPresent()) {
+            throw new ConfigException("input_format of base58 column `" + base58Column.getName() + "` doesn't apply to long values");
+        }
+        this.inputFormat = base58Column.getInputFormat().or(InputFormat.HEX);
+        if (!isEncode && base58Column.getInputFormat().isPresent()) {
+            throw new ConfigException("input_format of base58 column `" + base58Column.getName() + "` only applies when encoding");
+        }
+        this.outputFormat = base58Column.getOutputFormat().or(OutputFormat.HEX);
+        if (isEncode && base58Column.getOutputFormat().isPresent()) {
+            throw new ConfigException("output_format of base58 column `" + base58Column.getName() + "` only applies when decoding");
+        }
+        this.isLongOutput = outputFormat == OutputFormat.LONG;
+        if (isLongOutput && isJsonSource) {
+            throw new ConfigException("output_format: long of base58 column `" + base58Column.getName() + "` doesn't apply to json_path");
+        }
+        ErrorPolicy.OnError onError = base58Column.getOnError().or(ErrorPolicy.OnError.NULL);
+        if (isLongOutput && onError == ErrorPolicy.OnError.PASSTHROUGH) {
+            throw new ConfigException("on_error: passthrough of base58 column `" + base58Column.getName() + "` can't write strings to a long column");
+        }
+        this.alphabet = base58Column.getAlphabet();
+        this.prefix = base58Column.getPrefix().or("");
+        if (base58Column.getPrefixes().isPresent()) {
+            if (isEncode || base58Column.getPrefix().isPresent()) {
+                throw new ConfigException("prefixes of base58 column `" + base58Column.getName() + "` only apply when decoding, instead of prefix");
+            }
+            this.prefixes = base58Column.getPrefixes().get();
+        } else {
+            this.prefixes = prefix.isEmpty() ? Collections.<String>emptyList() : Collections.singletonList(prefix);
+        }
+        this.prefixTrie = isEncode || prefixes.isEmpty() ? null : new PrefixTrie(prefixes);
+        if ((isEncode || isJsonSource) && prefixColumn != null) {
+            throw new ConfigException("prefix_column of base58 column `" + base58Column.getName() + "` only applies when decoding string columns");
+        }
+        if (prefixColumn != null && prefixTrie == null) {
+            throw new ConfigException("prefix_column of base58 column `" + base58Column.getName() + "` needs prefix or prefixes");
+        }
+        this.prefixOutputIndex = prefixColumn == null ? -1 : prefixColumn.getIndex();
+        this.width = base58Column.getWidth().or(Base58Codec.ANY_WIDTH);
+        if (width != Base58Codec.ANY_WIDTH
+                && width != Base58Codec.OBJECT_ID_WIDTH
+                && width != Base58Codec.UUID_WIDTH
+                && width != Base58Codec.DIGEST_WIDTH) {
+            throw new ConfigException("Unsupported width " + width + " for base58 column `" + base58Column.getName() + "`. Expected 12, 16 or 32 (bytes)");
+        }
+        this.isChecked = base58Column.getChecksum() == Checksum.BASE58CHECK;
+        if (isChecked && (isLongSource || width != Base58Codec.ANY_WIDTH)) {
+            throw new ConfigException("checksum of base58 column `" + base58Column.getName() + "` can't be combined with long values or width");
+        }
+        this.isSortable = base58Column.getSortable();
+        if (isSortable && (isChecked || !alphabet.isInAsciiOrder())) {
+            throw new ConfigException("sortable base58 column `" + base58Column.getName() + "` needs an alphabet in ascii order, like bitcoin, and no checksum");
+        }
+        this.hash = base58Column.getHash();
+        if (hash != HashFunction.NONE && (!isEncode || isLongSource || base58Column.getInputFormat().isPresent()
+                || isChecked || isSortable || width != Base58Codec.ANY_WIDTH)) {
+            throw new ConfigException("hash of base58 column `" + base58Column.getName()
+                    + "` only applies when encoding strings, without input_format, checksum, sortable or width");
+        }
+        this.isIdempotent = base58Column.getIdempotent();
+        if (isIdempotent && (!isEncode || isLongSource)) {
+            throw new ConfigException("idempotent of base58 column `" + base58Column.getName() + "` only applies when encoding strings");
+        }
+        if (isIdempotent && prefix.isEmpty() && (hash != HashFunction.NONE || inputFormat == InputFormat.BASE64)) {
+            throw new ConfigException("idempotent base58 column `" + base58Column.getName()
+                    + "` needs a prefix to tell encoded values apart, with hash or input_format: base64");
+        }
+        this.targetName = base58Column.getNewName().or(base58Column.getName());
+        this.codec = codec;
+        this.errorPolicy = new ErrorPolicy(targetName, onError, base58Column.getFailAfter().or(Long.MAX_VALUE),
+                deadLetter, logger);
+        this.metrics = new ColumnMetrics(targetName);
+
+        int cacheSize = base58Column.getCacheSize().or(0);
+        if (cacheSize < 0 || cacheSize > ConversionCache.MAX_SIZE) {
+            throw new ConfigException("cache_size of base58 column `" + base58Column.getName() + "` must be between 0 and " + ConversionCache.MAX_SIZE);
+        }
+        this.cache = cacheSize > 0 && !isLongOutput ? ConversionCache.shared(signature(), cacheSize) : null;
+        this.store = base58Column.getPersistentCachePath().isPresent() && !isLongSource && !isLongOutput
+                ? PersistentConversionStore.shared(base58Column.getPersistentCachePath().get(), base58Column.getPersistentCacheSizeMb(), signature())
+                : null;
+    }
+
+    // Everything that determines the converted value of a given input
+    private String signature()
+    {
+        return sourceColumn.getName() + "\u0000" + targetName + "\u0000" + isEncode + "\u0000" + inputFormat + "\u0000" + outputFormat + "\u0000" + alphabet + "\u0000" + isChecked
+                + "\u0000" + isSortable + "\u0000" + width + "\u0000" + hash + "\u0000" + prefix + "\u0000" + prefixes;
+    }
+
+    @Override
+    public void convert(PageReader reader, PageBuilder builder)
+    {
+        // Don't bother setting it if the source is null
+        if (reader.isNull(sourceIndex)) {
+            metrics.nulls++;
+            builder.setNull(outputIndex);
+            if (prefixOutputIndex >= 0) {
+                builder.setNull(prefixOutputIndex);
+            }
+            return;
+        }
+
+        if (prefixOutputIndex >= 0) {
+            setPrefix(builder, prefixTrie.match(reader.getString(sourceIndex)));
+        }
+
+        if (jsonPath != null) {
+            builder.setJson(outputIndex, convertJson(reader.getJson(sourceIndex)));
+            return;
+        }
+
+        if (isLongOutput) {
+            if (convertToLong(reader.getString(sourceIndex))) {
+                builder.setLong(outputIndex, codec.getDecodedLong());
+            } else {
+                builder.setNull(outputIndex);
+            }
+            return;
+        }
+
+        // Not timed per value: two clock reads would cost about as much as converting a long
+        String convertedValue = isLongSource
+                ? convertLong(reader.getLong(sourceIndex))
+                : convertValue(reader.getString(sourceIndex));
+
+        if (convertedValue == null) {
+            builder.setNull(outputIndex);
+        } else {
+            builder.setString(outputIndex, convertedValue);
+        }
+    }
+
+    private void setPrefix(PageBuilder builder, String matched)
+    {
+        if (matched == null) {
+            builder.setNull(prefixOutputIndex);
+        } else {
+            builder.setString(prefixOutputIndex, matched);
+        }
+    }
+
+    String convertValue(String value)
+    {
+        if (isIdempotent && isEncoded(value)) {
+            metrics.skipped++;
+            return value;
+        }
+
+        String convertedValue = convertCached(value);
+        if (convertedValue == null) {
+            metrics.failures++;
+            return errorPolicy.handle(value, failureReason);
+        } else {
+            metrics.converted++;
+            metrics.inputBytes += value.length();
+            metrics.outputBytes += convertedValue.length();
+        }
+        return convertedValue;
+    }
+
+    String convertLong(long value)
+    {
+        // Cheaper than a cache lookup, and can't fail
+        String convertedValue = isChecked ? codec.encodeChecked(value, prefix)
+                : isSortable ? codec.encodeSortable(value, prefix) : codec.encode(value, prefix);
+        metrics.converted++;
+        metrics.inputBytes += 8;
+        metrics.outputBytes += convertedValue.length();
+        return convertedValue;
+    }
+
+    Value convertJson(Value value)
+    {
+        return jsonPath.rewrite(value, this::convertJsonValue);
+    }
+
+    // Converts strings, and integers when encoding, like values of string and long columns. With hash,
+    // integers are hashed as their decimal text, so that ids never stay in clear.
+    // Other values at the path are left as they are.
+    private Value convertJsonValue(Value value)
+    {
+        if (value.isStringValue()) {
+            return convertJsonString(value.asStringValue().asString());
+        }
+        if (isEncode && value.isIntegerValue()) {
+            if (hash != HashFunction.NONE) {
+                return convertJsonString(value.toJson());
+            }
+            // Unsigned 64-bit like long columns: toLong() keeps the bits of values above Long.MAX_VALUE
+            return ValueFactory.newString(convertLong(value.asIntegerValue().toLong()));
+        }
+        return value;
+    }
+
+    private Value convertJsonString(String value)
+    {
+        String convertedValue = convertValue(value);
+        return convertedValue == null ? ValueFactory.newNil() : ValueFactory.newString(convertedValue);
+    }
+
+    // Leaves the value in codec.getDecodedLong(). Cheaper than a cache lookup too.
+    boolean convertToLong(String value)
+    {
+        int start = prefixLength(value);
+        boolean decoded = isChecked
+                ? codec.decodeLongChecked(value, start, value.length())
+                : codec.decodeLong(value, start, value.length());
+        if (!decoded) {
+            metrics.failures++;
+            errorPolicy.handle(value, isChecked ? "not a base58check value of up to 64 bits" : "not a base58 value of up to 64 bits");
+            return false;
+        }
+        metrics.converted++;
+        metrics.inputBytes += value.length();
+        metrics.outputBytes += 8;
+        return true;
+    }
+
+    private String convertCached(String value)
+    {
+        if (cache == null && store == null) {
+            return convertUncached(value);
+        }
+
+        String convertedValue = cache != null ? cache.get(value) : null;
+        if (convertedValue != null) {
+            metrics.cacheHits++;
+            return convertedValue;
+        }
+        if (cache != null) {
+            metrics.cacheMisses++;
+        }
+
+        // Then what earlier runs converted
+        if (store != null) {
+            convertedValue = store.get(value);
+            if (convertedValue != null) {
+                metrics.storeHits++;
+                if (cache != null) {
+                    cache.put(value, convertedValue);
+                }
+                return convertedValue;
+            }
+            metrics.storeMisses++;
+        }
+
+        // Failures are not cached so that every bad value still gets reported
+        convertedValue = convertUncached(value);
+        if (convertedValue != null) {
+            if (cache != null) {
+                cache.put(value, convertedValue);
+            }
+            if (store != null) {
+                store.put(value, convertedValue);
+            }
+        }
+        return convertedValue;
+    }
+
+    private String convertUncached(String value)
+    {
+        // The codec validates while converting and returns null instead of throwing
+        if (isEncode) {
+            String encoded;
+            if (hash != HashFunction.NONE) {
+                encoded = codec.encodeHash(value, hash, prefix); // any string has a digest
+            } else if (isChecked) {
+                encoded = codec.encodeChecked(value, inputFormat, prefix);
+            } else if (isSortable) {
+                encoded = codec.encodeSortable(value, inputFormat, prefix, width);
+            } else {
+                encoded = codec.encode(value, inputFormat, prefix, width);
+            }
+            if (encoded == null) {
+                failureReason = value.isEmpty() ? "empty value" : "not a " + inputFormat + " value";
+            }
+            return encoded;
+        } else {
+            // Decodes past the prefix in place, rather than from a stripped copy
+            int start = prefixLength(value);
+            String decoded;
+            if (isChecked) {
+                decoded = codec.decodeChecked(value, start, value.length(), outputFormat);
+            } else if (isSortable) {
+                decoded = codec.decodeSortable(value, start, value.length(), width, outputFormat);
+            } else {
+                decoded = codec.decode(value, start, value.length(), width, outputFormat);
+            }
+            if (decoded == null) {
+                failureReason = (isChecked ? "not a base58check value with a valid checksum" : "not a base58 value")
+                        + (outputFormat == OutputFormat.UUID ? " of up to 16 bytes" : "");
+            }
+            return decoded;
+        }
+    }
+
+    // Whether the value is already encoded, e.g. when partially loaded data is replayed: the prefix,
+    // then base58 digits that can't be read in the input format. A character scan, cheaper than a
+    // conversion that fails.
+    private boolean isEncoded(String value)
+    {
+        if (!value.startsWith(prefix)
+                || InputValidator.base58(value, prefix.length(), value.length(), alphabet.getDecodeTable()) != InputValidator.Validity.VALID) {
+            return false;
+        }
+        if (!prefix.isEmpty()) {
+            return true;
+        }
+        // Without a prefix, a value that's valid both ways is taken as input
+        switch (inputFormat) {
+            case HEX:
+                return InputValidator.hex(value, 0, value.length()) != InputValidator.Validity.VALID;
+            case DECIMAL:
+                return InputValidator.decimal(value, 0, value.length()) != InputValidator.Validity.VALID;
+            case UUID:
+                return InputValidator.uuid(value, 0, value.length()) != InputValidator.Validity.VALID;
+            default:
+                return false;
+        }
+    }
+
+    // Length of the prefix the value starts with, 0 if none
+    private int prefixLength(String value)
+    {
+        if (prefixTrie == null) {
+            return 0;
+        }
+        String matched = prefixTrie.match(value);
+        return matched == null ? 0 : matched.length();
+    }
+
+    void collect(PageReader reader, int row)
+    {
+        if (row == batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(256, row * 2));
+            if (isLongSource || isLongOutput) {
+                longBatch = Arrays.copyOf(longBatch, batch.length);
+            }
+            if (jsonPath != null) {
+                jsonBatch = Arrays.copyOf(jsonBatch, batch.length);
+            }
+            if (prefixOutputIndex >= 0) {
+                prefixBatch = Arrays.copyOf(prefixBatch, batch.length);
+            }
+        }
+        if (reader.isNull(sourceIndex)) {
+            metrics.nulls++;
+            batch[row] = null;
+        } else if (isLongSource) {
+            longBatch[row] = reader.getLong(sourceIndex);
+            batch[row] = LONG_VALUE;
+        } else if (jsonPath != null) {
+            jsonBatch[row] = reader.getJson(sourceIndex);
+            batch[row] = JSON_VALUE;
+        } else {
+            batch[row] = reader.getString(sourceIndex);
+        }
+        if (prefixOutputIndex >= 0) {
+            prefixBatch[row] = batch[row] == null ? null : prefixTrie.match(batch[row]);
+        }
+    }
+
+    void convertBatch(int rowCount)
+    {
+        long start = System.nanoTime();
+        String[] values = batch;
+        if (isLongSource) {
+            long[] longValues = longBatch;
+            for (int i = 0; i < rowCount; i++) {
+                if (values[i] == LONG_VALUE) {
+                    values[i] = convertLong(longValues[i]);
+                }
+            }
+        } else if (jsonPath != null) {
+            Value[] jsonValues = jsonBatch;
+            for (int i = 0; i < rowCount; i++) {
+                if (values[i] == JSON_VALUE) {
+                    jsonValues[i] = convertJson(jsonValues[i]);
+                }
+            }
+        } else if (isLongOutput) {
+            long[] longValues = longBatch;
+            for (int i = 0; i < rowCount; i++) {
+                if (values[i] != null && convertToLong(values[i])) {
+                    longValues[i] = codec.getDecodedLong();
+                    values[i] = LONG_VALUE;
+                } else {
+                    values[i] = null;
+                }
+            }
+        } else {
+            for (int i = 0; i < rowCount; i++) {
+                if (values[i] != null) {
+                    values[i] = convertValue(values[i]);
+                }
+            }
+        }
+        metrics.nanos += System.nanoTime() - start;
+        batchPosition = 0;
+    }
+
+    // Writes the converted batch, one record per call
+    ColumnConverter batchWriter()
+    {
+        return (reader, builder) -> {
+            String convertedValue = batch[batchPosition];
+            batch[batchPosition] = null;
+            if (prefixOutputIndex >= 0) {
+                setPrefix(builder, prefixBatch[batchPosition]);
+                prefixBatch[batchPosition] = null;
+            }
+            if (convertedValue == null) {
+                builder.setNull(outputIndex);
+            } else if (convertedValue == LONG_VALUE) {
+                builder.setLong(outputIndex, longBatch[batchPosition]);
+            } else if (convertedValue == JSON_VALUE) {
+                builder.setJson(outputIndex, jsonBatch[batchPosition]);
+                jsonBatch[batchPosition] = null;
+            } else {
+                builder.setString(outputIndex, convertedValue);
+            }
+            batchPosition++;
+        };
+    }
+
+    ColumnMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    void finish()
+    {
+        errorPolicy.finish();
+        if (store != null) {
+            store.flush();
+        }
+    }
+
+    // Releases what the column shares with other tasks of the job
+    void close()
+    {
+        if (cache != null) {
+            cache.release();
+        }
+        if (store != null) {
+            store.release();
+        }
+    }
+}
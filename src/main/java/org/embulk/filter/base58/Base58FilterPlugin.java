@@ -4,6 +4,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import org.embulk.config.Config;
 import org.embulk.config.ConfigDefault;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.Task;
 import org.embulk.config.TaskSource;
@@ -16,13 +17,16 @@ import org.embulk.spi.PageBuilder;
 import org.embulk.spi.PageOutput;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
+import org.embulk.spi.type.Type;
 import org.embulk.spi.type.Types;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Base58FilterPlugin implements FilterPlugin {
 
@@ -31,6 +35,22 @@ public class Base58FilterPlugin implements FilterPlugin {
     public interface PluginTask extends Task {
         @Config("columns")
         List<Base58Column> getColumns();
+
+        @Config("column_batch")
+        @ConfigDefault("false")
+        boolean getColumnBatch();
+
+        @Config("pipeline_queue_size")
+        @ConfigDefault("0")
+        int getPipelineQueueSize();
+
+        @Config("dead_letter_path_prefix")
+        @ConfigDefault("null")
+        Optional<String> getDeadLetterPathPrefix();
+
+        @Config("dead_letter_format")
+        @ConfigDefault("\"jsonl\"")
+        DeadLetterWriter.Format getDeadLetterFormat();
     }
 
     public interface Base58Column extends Task {
@@ -41,29 +61,124 @@ public class Base58FilterPlugin implements FilterPlugin {
         @ConfigDefault("true")
         Optional<Boolean> getIsEncode();
 
+        @Config("alphabet")
+        @ConfigDefault("\"bitcoin\"")
+        Alphabet getAlphabet();
+
+        @Config("input_format")
+        @ConfigDefault("null")
+        Optional<InputFormat> getInputFormat();
+
+        @Config("output_format")
+        @ConfigDefault("null")
+        Optional<OutputFormat> getOutputFormat();
+
+        @Config("checksum")
+        @ConfigDefault("\"none\"")
+        Checksum getChecksum();
+
+        @Config("hash")
+        @ConfigDefault("\"none\"")
+        HashFunction getHash();
+
+        @Config("sortable")
+        @ConfigDefault("false")
+        boolean getSortable();
+
+        @Config("json_path")
+        @ConfigDefault("null")
+        Optional<String> getJsonPath();
+
+        @Config("idempotent")
+        @ConfigDefault("false")
+        boolean getIdempotent();
+
         @Config("prefix")
         @ConfigDefault("null")
         Optional<String> getPrefix();
 
+        @Config("prefixes")
+        @ConfigDefault("null")
+        Optional<List<String>> getPrefixes();
+
+        @Config("prefix_column")
+        @ConfigDefault("null")
+        Optional<String> getPrefixColumn();
+
         @Config("new_name")
         @ConfigDefault("null")
         Optional<String> getNewName();
+
+        @Config("width")
+        @ConfigDefault("null")
+        Optional<Integer> getWidth();
+
+        @Config("cache_size")
+        @ConfigDefault("null")
+        Optional<Integer> getCacheSize();
+
+        @Config("persistent_cache_path")
+        @ConfigDefault("null")
+        Optional<String> getPersistentCachePath();
+
+        @Config("persistent_cache_size_mb")
+        @ConfigDefault("64")
+        int getPersistentCacheSizeMb();
+
+        // Unquoted, `on_error: null` is a YAML null, which means the default
+        @Config("on_error")
+        @ConfigDefault("null")
+        Optional<ErrorPolicy.OnError> getOnError();
+
+        @Config("fail_after")
+        @ConfigDefault("null")
+        Optional<Long> getFailAfter();
     }
 
     @Override
     public void transaction(ConfigSource config, Schema inputSchema, FilterPlugin.Control control) {
         PluginTask task = config.loadConfig(PluginTask.class);
+        if (task.getPipelineQueueSize() < 0) {
+            throw new ConfigException("pipeline_queue_size must not be negative");
+        }
         Schema outputSchema = buildOutputSchema(task, inputSchema);
-        control.run(task.dump(), outputSchema);
+        // Fails fast on bad column settings, and keeps what columns share open from task to task
+        ConversionPlan plan = buildConversionPlan(task, inputSchema, outputSchema);
+        try {
+            control.run(task.dump(), outputSchema);
+        } finally {
+            plan.close();
+        }
+        logMetricTotals(task);
+    }
+
+    // Filter plugins get no task or commit reports, so per-column totals of all tasks are logged here
+    void logMetricTotals(PluginTask task) {
+        for (Base58Column column : task.getColumns()) {
+            String name = column.getNewName().or(column.getName());
+            ColumnMetrics totals = ColumnMetrics.drainTotals(name);
+            if (totals != null) {
+                logger.info("base58 column totals: name: {}, metrics: {}", name, totals);
+            }
+        }
     }
 
     Schema buildOutputSchema(PluginTask task, Schema inputSchema) {
         ImmutableList.Builder<Column> builder = ImmutableList.builder();
 
+        // Columns converted in place take the type of the converted value, e.g. an encoded long becomes a string
+        Map<String, Type> overridden = new HashMap<>();
+        for (Base58Column column : task.getColumns()) {
+            if (!column.getNewName().isPresent()) {
+                overridden.put(column.getName(), outputType(column));
+            }
+        }
+
         // Roll through original columns
         int i = 0;
         for (Column column : inputSchema.getColumns()) {
-            builder.add(new Column(i++, column.getName(), column.getType()));
+            Type type = overridden.containsKey(column.getName()) ? overridden.get(column.getName()) : column.getType();
+            builder.add(new Column(i++, column.getName(), type));
         }
 
         // Append new columns, if base58 columns desire it
@@ -71,172 +186,127 @@ public class Base58FilterPlugin implements FilterPlugin {
             if (column.getNewName().isPresent()) {
                 logger.info("added column: name: {}, type: {}, index: {}",
                         column.getNewName().get(),
-                        Types.STRING,
+                        outputType(column),
                         i);
-                builder.add(new Column(i++, column.getNewName().get(), Types.STRING));
+                builder.add(new Column(i++, column.getNewName().get(), outputType(column)));
             } else {
                 logger.info("overriding column: name: {}", column.getName());
             }
         }
 
+        // Then the columns for the prefixes stripped while decoding
+        for (Base58Column column : task.getColumns()) {
+            if (column.getPrefixColumn().isPresent()) {
+                logger.info("added column: name: {}, type: {}, index: {}",
+                        column.getPrefixColumn().get(),
+                        Types.STRING,
+                        i);
+                builder.add(new Column(i++, column.getPrefixColumn().get(), Types.STRING));
+            }
+        }
+
         return new Schema(builder.build());
     }
 
+    private static Type outputType(Base58Column column) {
+        if (column.getJsonPath().isPresent()) {
+            return Types.JSON;
+        }
+        return column.getOutputFormat().or(OutputFormat.HEX) == OutputFormat.LONG ? Types.LONG : Types.STRING;
+    }
+
     @Override
     public PageOutput open(final TaskSource taskSource, final Schema inputSchema,
                            final Schema outputSchema, final PageOutput output) {
 
         final PluginTask task = taskSource.loadTask(PluginTask.class);
-        final Map<String, List<Base58Column>> base58ColumnMap = convertBase58ColumnListToMap(task.getColumns());
-        final Map<String, Column> outputColumnMap = convertColumnListToMap(outputSchema.getColumns(), logger);
+        final ConversionPlan plan = buildConversionPlan(task, inputSchema, outputSchema);
 
-        return new PageOutput() {
+        PageOutput pageOutput = new PageOutput() {
             private PageReader reader = new PageReader(inputSchema);
             private PageBuilder builder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, output);
 
             @Override
             public void add(Page page) {
-                reader.setPage(page);
-                while (reader.nextRecord()) {
-                    setValue(base58ColumnMap, outputColumnMap, reader, outputSchema, builder);
-                    builder.addRecord();
-                }
+                plan.convertPage(page, reader, builder);
             }
 
             @Override
             public void finish() {
                 builder.finish();
+                plan.finish(logger);
             }
 
             @Override
             public void close() {
-                builder.close();
+                try {
+                    builder.close();
+                } finally {
+                    plan.close();
+                }
             }
         };
+
+        // Optionally convert on a worker thread while the task thread keeps reading input
+        return task.getPipelineQueueSize() > 0 ? new PipelinedPageOutput(pageOutput, task.getPipelineQueueSize()) : pageOutput;
     }
 
-    void setValue(final Map<String, List<Base58Column>> base58ColumnMap, final Map<String, Column> outputColumnMap, final PageReader reader, final Schema outputSchema, final PageBuilder builder) {
+    ConversionPlan buildConversionPlan(PluginTask task, Schema inputSchema, Schema outputSchema) {
 
-        // Build a map of output columns that should be mapped to encoded/decoded original columns
+        // Map output column names to the base58 column config that produces them
         final Map<String, Base58Column> modifiedColumnMap = new HashMap<>(); // output column -> base58 column config
-        for (List<Base58Column> base58SourceColumns : base58ColumnMap.values()) {
-            for (Base58Column base58Column : base58SourceColumns) {
-                String outputColumnName = base58Column.getNewName().isPresent() ? base58Column.getNewName().get() : base58Column.getName();
-                modifiedColumnMap.put(outputColumnName, base58Column);
+        final Set<String> prefixColumnNames = new HashSet<>(); // written by the converter of their base58 column
+        for (Base58Column base58Column : task.getColumns()) {
+            modifiedColumnMap.put(base58Column.getNewName().or(base58Column.getName()), base58Column);
+            if (base58Column.getPrefixColumn().isPresent()) {
+                prefixColumnNames.add(base58Column.getPrefixColumn().get());
             }
         }
 
-        // Set values on all our output columns
-        List<Column> columns = outputSchema.getColumns();
-        for (Column outputColumn : columns) {
-
-            // Convert the value if configured to do so
-            if (modifiedColumnMap.containsKey(outputColumn.getName())) {
-                Base58Column base58Column = modifiedColumnMap.get(outputColumn.getName());
-                Column sourceColumn = outputColumnMap.get(base58Column.getName());
-                String inputValue, convertedValue = null;
-
-                // Don't bother setting it if the source is null
-                if (reader.isNull(sourceColumn)) {
-                    builder.setNull(outputColumn);
-                    continue;
-                }
-
-                // Get the source value
-                if (Types.STRING.equals(sourceColumn.getType())) {
-                    inputValue = reader.getString(sourceColumn);
-                } else {
-                    logger.error("cannot convert base58 value of non-string values. name: {}, type: {}, index: {}",
-                            sourceColumn.getName(),
-                            sourceColumn.getType(),
-                            sourceColumn.getIndex());
-                    throw new DataException("Unexpected non-string type in column `" + sourceColumn.getName() + "`. Got: " + sourceColumn.getType());
-                }
-
-                // Convert the source value
-                try {
-                    convertedValue = convertValue(inputValue, base58Column.getIsEncode().or(true), base58Column.getPrefix().or(""));
-                } catch (Exception e) {
-                    // Failed to do the conversion. Probably misconfigured or malformed value
-                    logger.error("failed to encode/decode base58 column value. name: {}, type: {}, index: {}, value: {}, method: {}, prefix: {}, target_name: {}",
-                            sourceColumn.getName(),
-                            sourceColumn.getType(),
-                            sourceColumn.getIndex(),
-                            inputValue,
-                            base58Column.getIsEncode().get() ? "encode" : "decode",
-                            base58Column.getPrefix(),
-                            base58Column.getNewName().or(base58Column.getName()));
-                    logger.error("base58 conversion exception", e);
-                    // Don't crash the import if a single value is screwed up. Just log it for now
-                }
-
-                if (convertedValue == null) {
-                    builder.setNull(outputColumn);
-                    continue;
-                } else {
-                    builder.setString(outputColumn, convertedValue);
-                    continue;
-                }
+        // One codec per alphabet and task; its scratch buffers are shared by the columns using it
+        final Map<Alphabet, Base58Codec> codecs = new HashMap<>();
+        final DeadLetterWriter deadLetter = task.getDeadLetterPathPrefix().isPresent()
+                ? new DeadLetterWriter(task.getDeadLetterPathPrefix().get(), task.getDeadLetterFormat())
+                : null;
+        final Set<String> outputNames = new HashSet<>();
+
+        List<ColumnConverter> converters = new ArrayList<>();
+        List<Column> untouchedColumns = new ArrayList<>();
+        for (Column outputColumn : outputSchema.getColumns()) {
+            if (!outputNames.add(outputColumn.getName())) {
+                logger.warn("Output column ({}) already defined. Do you have duplicate column names in your source?", outputColumn.getName());
             }
 
-            // No value?
-            if (reader.isNull(outputColumn)) {
-                builder.setNull(outputColumn);
+            if (prefixColumnNames.contains(outputColumn.getName())) {
                 continue;
             }
-
-            // Inherit value
-            if (Types.STRING.equals(outputColumn.getType())) {
-                builder.setString(outputColumn, reader.getString(outputColumn));
-            }
-            else if (Types.BOOLEAN.equals(outputColumn.getType())) {
-                builder.setBoolean(outputColumn, reader.getBoolean(outputColumn));
-            }
-            else if (Types.DOUBLE.equals(outputColumn.getType())) {
-                builder.setDouble(outputColumn, reader.getDouble(outputColumn));
-            }
-            else if (Types.LONG.equals(outputColumn.getType())) {
-                builder.setLong(outputColumn, reader.getLong(outputColumn));
-            }
-            else if (Types.TIMESTAMP.equals(outputColumn.getType())) {
-                builder.setTimestamp(outputColumn, reader.getTimestamp(outputColumn));
-            }
-            else if (Types.JSON.equals(outputColumn.getType())) {
-                builder.setJson(outputColumn, reader.getJson(outputColumn));
-            } else {
-                // NO VALUE? It shall be null.
-                builder.setNull(outputColumn);
+            Base58Column base58Column = modifiedColumnMap.get(outputColumn.getName());
+            if (base58Column == null) {
+                untouchedColumns.add(outputColumn);
+                continue;
             }
-        }
-    }
-
-    String convertValue(String value, Boolean isEncode, String prefix) {
-        if (isEncode) {
-            return Base58.encodeWithPrefix(value, prefix);
-        } else {
-            return Base58.decodeWithPrefix(value, prefix);
-        }
-    }
 
-    static Map<String, List<Base58Column>> convertBase58ColumnListToMap(List<Base58Column> base58Columns) {
-        Map<String, List<Base58Column>> result = new HashMap<>();
-        for (Base58Column base58Column : base58Columns) {
-            if (!result.containsKey(base58Column.getName())) {
-                result.put(base58Column.getName(), new ArrayList<>());
+            // Strings and values inside JSON convert both ways; longs can be encoded
+            Column sourceColumn = inputSchema.lookupColumn(base58Column.getName());
+            boolean isEncode = base58Column.getIsEncode().or(true);
+            if (!Types.STRING.equals(sourceColumn.getType()) && !Types.JSON.equals(sourceColumn.getType())
+                    && !(isEncode && Types.LONG.equals(sourceColumn.getType()))) {
+                logger.error("cannot convert base58 value of non-string values. name: {}, type: {}, index: {}",
+                        sourceColumn.getName(),
+                        sourceColumn.getType(),
+                        sourceColumn.getIndex());
+                throw new DataException("Unexpected non-string type in column `" + sourceColumn.getName() + "`. Got: " + sourceColumn.getType());
             }
-            result.get(base58Column.getName()).add(base58Column);
+            Base58Codec codec = codecs.computeIfAbsent(base58Column.getAlphabet(), Base58Codec::new);
+            Column prefixColumn = base58Column.getPrefixColumn().isPresent()
+                    ? outputSchema.lookupColumn(base58Column.getPrefixColumn().get())
+                    : null;
+            converters.add(new Base58ColumnConverter(base58Column, sourceColumn, outputColumn, prefixColumn, codec, deadLetter, logger));
         }
-        return result;
-    }
-
-    static Map<String, Column> convertColumnListToMap(List<Column> columns, Logger logger) {
-        Map<String, Column> result = new HashMap<>();
-        for (Column column : columns) {
-            if (result.containsKey(column.getName())) {
-                logger.warn("Output column ({}) already defined. Do you have duplicate column names in your source?", column.getName());
-            }
-            result.put(column.getName(), column);
+        if (!untouchedColumns.isEmpty()) {
+            converters.add(ColumnConverter.passthrough(untouchedColumns));
         }
-        return result;
+
+        return new ConversionPlan(inputSchema, task.getColumnBatch(), converters.toArray(new ColumnConverter[0]), deadLetter);
     }
 }
@@ -0,0 +1,30 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+
+// Checksum appended to the value before encoding, and verified and removed after decoding
+public enum Checksum
+{
+    NONE,
+    BASE58CHECK; // first 4 bytes of the double SHA-256 of the payload
+
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+
+    @JsonCreator
+    public static Checksum fromString(String value)
+    {
+        for (Checksum checksum : values()) {
+            if (checksum.toString().equals(value)) {
+                return checksum;
+            }
+        }
+        throw new ConfigException("Unknown checksum `" + value + "`. Expected none or base58check");
+    }
+}
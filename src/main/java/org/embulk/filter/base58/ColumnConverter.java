@@ -0,0 +1,116 @@
+package org.embulk.filter.base58;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Writes output columns of the current record. Resolved once per task so the
+// per-record loop doesn't have to look anything up.
+interface ColumnConverter
+{
+    void convert(PageReader reader, PageBuilder builder);
+
+    // Copies all the untouched columns in one call, grouped by type
+    static ColumnConverter passthrough(List<Column> columns)
+    {
+        return new Copier(columns);
+    }
+
+    // Strings and JSON values live in the page's reference lists, so copying them only moves the
+    // reference: nothing is decoded or re-encoded. Each type gets a loop of its own, which keeps
+    // the reader and builder calls monomorphic instead of one virtual call per column.
+    final class Copier implements ColumnConverter
+    {
+        private final int[] strings;
+        private final int[] booleans;
+        private final int[] doubles;
+        private final int[] longs;
+        private final int[] timestamps;
+        private final int[] jsons;
+        private final int[] nulls;
+
+        Copier(List<Column> columns)
+        {
+            this.strings = indexes(columns, Types.STRING);
+            this.booleans = indexes(columns, Types.BOOLEAN);
+            this.doubles = indexes(columns, Types.DOUBLE);
+            this.longs = indexes(columns, Types.LONG);
+            this.timestamps = indexes(columns, Types.TIMESTAMP);
+            this.jsons = indexes(columns, Types.JSON);
+            // NO VALUE? It shall be null.
+            this.nulls = indexes(columns, null);
+        }
+
+        // Indexes of the columns of that type, or of any other type if null
+        private static int[] indexes(List<Column> columns, Type type)
+        {
+            int[] indexes = new int[columns.size()];
+            int count = 0;
+            for (Column column : columns) {
+                Type columnType = column.getType();
+                boolean known = Types.STRING.equals(columnType) || Types.BOOLEAN.equals(columnType)
+                        || Types.DOUBLE.equals(columnType) || Types.LONG.equals(columnType)
+                        || Types.TIMESTAMP.equals(columnType) || Types.JSON.equals(columnType);
+                if (type == null ? !known : type.equals(columnType)) {
+                    indexes[count++] = column.getIndex();
+                }
+            }
+            return Arrays.copyOf(indexes, count);
+        }
+
+        @Override
+        public void convert(PageReader reader, PageBuilder builder)
+        {
+            for (int index : strings) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setString(index, reader.getString(index));
+                }
+            }
+            for (int index : booleans) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setBoolean(index, reader.getBoolean(index));
+                }
+            }
+            for (int index : doubles) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setDouble(index, reader.getDouble(index));
+                }
+            }
+            for (int index : longs) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setLong(index, reader.getLong(index));
+                }
+            }
+            for (int index : timestamps) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setTimestamp(index, reader.getTimestamp(index));
+                }
+            }
+            for (int index : jsons) {
+                if (reader.isNull(index)) {
+                    builder.setNull(index);
+                } else {
+                    builder.setJson(index, reader.getJson(index));
+                }
+            }
+            for (int index : nulls) {
+                builder.setNull(index);
+            }
+        }
+    }
+}
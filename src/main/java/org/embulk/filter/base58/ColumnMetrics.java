@@ -0,0 +1,67 @@
+package org.embulk.filter.base58;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Conversion counters of one base58 column. Each task owns its instances and only touches them
+// from its own thread, so counting is plain field arithmetic; totals are merged once per task.
+final class ColumnMetrics
+{
+    private static final ConcurrentMap<String, ColumnMetrics> TOTALS = new ConcurrentHashMap<>();
+
+    private final String column;
+
+    long converted;
+    long nulls;
+    long failures;
+    long skipped; // already encoded, with idempotent
+    long cacheHits;
+    long cacheMisses;
+    long storeHits; // values found in the persistent store
+    long storeMisses;
+    long inputBytes; // characters of the source values, which are ascii for every supported format
+    long outputBytes;
+    long nanos; // converting column batches; record by record, only whole pages are timed
+
+    ColumnMetrics(String column)
+    {
+        this.column = column;
+    }
+
+    String getColumn()
+    {
+        return column;
+    }
+
+    // Adds a finished task's counters to the job totals of its column
+    void publish()
+    {
+        ColumnMetrics total = TOTALS.computeIfAbsent(column, ColumnMetrics::new);
+        synchronized (total) {
+            total.converted += converted;
+            total.nulls += nulls;
+            total.failures += failures;
+            total.skipped += skipped;
+            total.cacheHits += cacheHits;
+            total.cacheMisses += cacheMisses;
+            total.storeHits += storeHits;
+            total.storeMisses += storeMisses;
+            total.inputBytes += inputBytes;
+            total.outputBytes += outputBytes;
+            total.nanos += nanos;
+        }
+    }
+
+    // Removes and returns the job totals of a column, or null if no task published any
+    static ColumnMetrics drainTotals(String column)
+    {
+        return TOTALS.remove(column);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("{converted: %d, nulls: %d, failures: %d, skipped: %d, cache_hits: %d, cache_misses: %d, store_hits: %d, store_misses: %d, input_bytes: %d, output_bytes: %d, convert_ms: %d}",
+                converted, nulls, failures, skipped, cacheHits, cacheMisses, storeHits, storeMisses, inputBytes, outputBytes, nanos / 1000000);
+    }
+}
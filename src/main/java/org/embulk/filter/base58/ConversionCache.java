@@ -0,0 +1,98 @@
+package org.embulk.filter.base58;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded, lock-free memo of converted values, shared by all tasks of a column in this JVM.
+// Two-way set associative: a new entry takes the first slot of its set and pushes the
+// previous occupant into the second one, evicting whatever was there. Races between
+// writers can only lose entries, never return a wrong value, because entries are immutable.
+final class ConversionCache
+{
+    private static final Map<String, ConversionCache> SHARED = new HashMap<>(); // guarded by itself
+
+    static final int MAX_SIZE = 1 << 24; // 2^25 slots at most, far from overflowing the capacity
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private String sharedKey; // guarded by SHARED
+    private int references; // guarded by SHARED
+
+    ConversionCache(int size)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 2; // index of the first slot of a set
+    }
+
+    // Caches are keyed on everything that affects the converted value, so tasks
+    // running the same column configuration share one instance. Every call needs a release().
+    static ConversionCache shared(String signature, int size)
+    {
+        String key = signature + "\u0000" + size;
+        synchronized (SHARED) {
+            ConversionCache cache = SHARED.get(key);
+            if (cache == null) {
+                cache = new ConversionCache(size);
+                cache.sharedKey = key;
+                SHARED.put(key, cache);
+            }
+            cache.references++;
+            return cache;
+        }
+    }
+
+    // The last release forgets the cache, so that a reused JVM doesn't keep it after the job
+    void release()
+    {
+        synchronized (SHARED) {
+            if (--references == 0) {
+                SHARED.remove(sharedKey);
+            }
+        }
+    }
+
+    String get(String key)
+    {
+        int set = indexFor(key);
+        Entry entry = slots.get(set);
+        if (entry != null && entry.key.equals(key)) {
+            return entry.value;
+        }
+        entry = slots.get(set + 1);
+        if (entry != null && entry.key.equals(key)) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    void put(String key, String value)
+    {
+        int set = indexFor(key);
+        Entry previous = slots.get(set);
+        if (previous != null && !previous.key.equals(key)) {
+            slots.lazySet(set + 1, previous);
+        }
+        slots.lazySet(set, new Entry(key, value));
+    }
+
+    private int indexFor(String key)
+    {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h << 1) & mask;
+    }
+
+    private static final class Entry
+    {
+        private final String key;
+        private final String value;
+
+        Entry(String key, String value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
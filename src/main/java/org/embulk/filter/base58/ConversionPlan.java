@@ -0,0 +1,127 @@
+package org.embulk.filter.base58;
+
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Pre-resolved converters that together write every output column of a record
+final class ConversionPlan
+{
+    private final Schema inputSchema;
+    private final boolean columnBatch;
+    private final ColumnConverter[] converters;
+    private final ColumnConverter[] batchConverters; // base58 columns replaced by writers of their converted batch
+    private final Base58ColumnConverter[] base58Converters;
+    private final DeadLetterWriter deadLetter; // null if not configured
+    private long nanos; // spent in convertPage(), once per page rather than per value
+
+    ConversionPlan(Schema inputSchema, boolean columnBatch, ColumnConverter[] converters, DeadLetterWriter deadLetter)
+    {
+        this.inputSchema = inputSchema;
+        this.columnBatch = columnBatch;
+        this.converters = converters;
+        this.deadLetter = deadLetter;
+        this.batchConverters = new ColumnConverter[converters.length];
+
+        List<Base58ColumnConverter> base58Converters = new ArrayList<>();
+        for (int i = 0; i < converters.length; i++) {
+            if (converters[i] instanceof Base58ColumnConverter) {
+                Base58ColumnConverter converter = (Base58ColumnConverter) converters[i];
+                base58Converters.add(converter);
+                batchConverters[i] = converter.batchWriter();
+            } else {
+                batchConverters[i] = converters[i];
+            }
+        }
+        this.base58Converters = base58Converters.toArray(new Base58ColumnConverter[0]);
+    }
+
+    void convertPage(Page page, PageReader reader, PageBuilder builder)
+    {
+        long start = System.nanoTime();
+        if (columnBatch && base58Converters.length > 0) {
+            convertPageByColumn(page, reader, builder);
+        } else {
+            reader.setPage(page);
+            while (reader.nextRecord()) {
+                convertRecord(reader, builder);
+                builder.addRecord();
+            }
+        }
+        nanos += System.nanoTime() - start;
+    }
+
+    void convertRecord(PageReader reader, PageBuilder builder)
+    {
+        for (ColumnConverter converter : converters) {
+            converter.convert(reader, builder);
+        }
+    }
+
+    // Collects the page's source values of every base58 column, converts them one column at a time,
+    // then builds the records. Keeps a single codec loop hot instead of interleaving it with the rest.
+    private void convertPageByColumn(Page page, PageReader reader, PageBuilder builder)
+    {
+        // A throwaway reader, since setPage() releases the previous page and the main reader owns this one
+        PageReader collector = new PageReader(inputSchema);
+        collector.setPage(page);
+        int rowCount = 0;
+        while (collector.nextRecord()) {
+            for (Base58ColumnConverter converter : base58Converters) {
+                converter.collect(collector, rowCount);
+            }
+            rowCount++;
+        }
+
+        for (Base58ColumnConverter converter : base58Converters) {
+            converter.convertBatch(rowCount);
+        }
+
+        reader.setPage(page);
+        while (reader.nextRecord()) {
+            for (ColumnConverter converter : batchConverters) {
+                converter.convert(reader, builder);
+            }
+            builder.addRecord();
+        }
+    }
+
+    // Logs one summary line for the task and adds its counters to the job totals
+    void finish(Logger logger)
+    {
+        if (base58Converters.length == 0) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        for (Base58ColumnConverter converter : base58Converters) {
+            converter.finish();
+            ColumnMetrics metrics = converter.getMetrics();
+            metrics.publish();
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(metrics.getColumn()).append(": ").append(metrics);
+        }
+        logger.info("base58 task summary: page_ms: {}, {}", nanos / 1000000, summary);
+
+        if (deadLetter != null && deadLetter.getCount() > 0) {
+            deadLetter.flush();
+            logger.warn("wrote {} rejected values to {}", deadLetter.getCount(), deadLetter.getPath());
+        }
+    }
+
+    void close()
+    {
+        for (Base58ColumnConverter converter : base58Converters) {
+            converter.close();
+        }
+        if (deadLetter != null) {
+            deadLetter.close();
+        }
+    }
+}
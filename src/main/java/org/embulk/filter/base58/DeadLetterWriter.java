@@ -0,0 +1,222 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+import org.embulk.spi.DataException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Appends rejected values to a local file owned by a single task, so tasks never share a lock.
+// The file is created on the first rejection; writes are buffered and flushed when the task ends.
+final class DeadLetterWriter
+{
+    public enum Format
+    {
+        JSONL("jsonl"),
+        CSV("csv");
+
+        private final String extension;
+
+        Format(String extension)
+        {
+            this.extension = extension;
+        }
+
+        @JsonValue
+        @Override
+        public String toString()
+        {
+            return extension;
+        }
+
+        @JsonCreator
+        public static Format fromString(String value)
+        {
+            for (Format format : values()) {
+                if (format.extension.equals(value)) {
+                    return format;
+                }
+            }
+            throw new ConfigException("Unknown dead_letter_format `" + value + "`. Expected jsonl or csv");
+        }
+    }
+
+    // Open() gets no task index, so tasks are numbered in the order they first reject a value
+    private static final AtomicInteger TASK_SEQUENCE = new AtomicInteger();
+
+    private final String pathPrefix;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    // Rejected values are dirty input: lone surrogates become '?' rather than cut the entry short
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+
+    private FileChannel channel;
+    private int taskIndex = -1;
+    private long count;
+
+    DeadLetterWriter(String pathPrefix, Format format)
+    {
+        this.pathPrefix = pathPrefix;
+        this.format = format;
+    }
+
+    void write(String column, String value, String reason)
+    {
+        if (channel == null) {
+            open();
+        }
+
+        line.setLength(0);
+        if (format == Format.JSONL) {
+            line.append("{\"task_index\":").append(taskIndex).append(",\"column\":");
+            appendJson(column);
+            line.append(",\"value\":");
+            appendJson(value);
+            line.append(",\"reason\":");
+            appendJson(reason);
+            line.append("}\n");
+        } else {
+            line.append(taskIndex).append(',');
+            appendCsv(column);
+            line.append(',');
+            appendCsv(value);
+            line.append(',');
+            appendCsv(reason);
+            line.append('\n');
+        }
+
+        encodeLine();
+        count++;
+    }
+
+    long getCount()
+    {
+        return count;
+    }
+
+    String getPath()
+    {
+        return channel == null ? null : path();
+    }
+
+    void flush()
+    {
+        if (channel != null) {
+            drain();
+        }
+    }
+
+    void close()
+    {
+        if (channel != null) {
+            try {
+                drain();
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new DataException("Failed to close dead letter file " + path(), e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    private void open()
+    {
+        taskIndex = TASK_SEQUENCE.getAndIncrement();
+        try {
+            channel = FileChannel.open(Paths.get(path()),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new DataException("Failed to create dead letter file " + path(), e);
+        }
+        if (format == Format.CSV) {
+            line.setLength(0);
+            line.append("task_index,column,value,reason\n");
+            encodeLine();
+        }
+    }
+
+    private String path()
+    {
+        return String.format("%s.%03d.%s", pathPrefix, taskIndex, format);
+    }
+
+    // Encodes the whole line into the buffer, draining it whenever it fills up
+    private void encodeLine()
+    {
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+            drain();
+        }
+        if (!result.isError()) {
+            while ((result = encoder.flush(buffer)).isOverflow()) {
+                drain();
+            }
+        }
+        if (result.isError()) {
+            throw new DataException("Failed to encode dead letter entry for " + path() + ": " + result);
+        }
+    }
+
+    private void drain()
+    {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new DataException("Failed to write dead letter file " + path(), e);
+        }
+        buffer.clear();
+    }
+
+    private void appendJson(String value)
+    {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void appendCsv(String value)
+    {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
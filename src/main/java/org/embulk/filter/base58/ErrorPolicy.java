@@ -0,0 +1,99 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+import org.embulk.spi.DataException;
+import org.slf4j.Logger;
+
+// Decides what a column writes for a value that can't be converted, and keeps the log readable:
+// the first few failures are logged in full, after that at most one line per interval.
+final class ErrorPolicy
+{
+    public enum OnError
+    {
+        NULL,
+        PASSTHROUGH,
+        FAIL;
+
+        @JsonValue
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+
+        @JsonCreator
+        public static OnError fromString(String value)
+        {
+            for (OnError onError : values()) {
+                if (onError.toString().equals(value)) {
+                    return onError;
+                }
+            }
+            throw new ConfigException("Unknown on_error `" + value + "`. Expected null, passthrough or fail");
+        }
+    }
+
+    private static final int LOGGED_FAILURES = 10;
+    private static final long LOG_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final String column;
+    private final OnError onError;
+    private final long failAfter; // failures tolerated per task
+    private final DeadLetterWriter deadLetter; // null if not configured
+    private final Logger logger;
+
+    private long failures;
+    private long suppressed;
+    private long lastLogged;
+
+    ErrorPolicy(String column, OnError onError, long failAfter, DeadLetterWriter deadLetter, Logger logger)
+    {
+        if (failAfter < 0) {
+            throw new ConfigException("fail_after of base58 column `" + column + "` must not be negative");
+        }
+        this.column = column;
+        this.onError = onError;
+        this.failAfter = onError == OnError.FAIL ? 0 : failAfter;
+        this.deadLetter = deadLetter;
+        this.logger = logger;
+    }
+
+    // Returns the value to write in place of the failed conversion
+    String handle(String value, String reason)
+    {
+        failures++;
+        if (deadLetter != null) {
+            deadLetter.write(column, value, reason);
+        }
+        if (failures > failAfter) {
+            throw new DataException("Failed to convert base58 column `" + column + "` (" + reason + "): " + value
+                    + (failures > 1 ? ". " + failures + " values failed in this task" : ""));
+        }
+
+        if (failures <= LOGGED_FAILURES) {
+            logger.warn("failed to convert base58 column value. name: {}, reason: {}, value: {}", column, reason, value);
+            lastLogged = System.nanoTime();
+        } else {
+            long now = System.nanoTime();
+            if (now - lastLogged >= LOG_INTERVAL_NANOS) {
+                logger.warn("failed to convert base58 column value. name: {}, reason: {}, value: {} ({} similar failures not logged)",
+                        column, reason, value, suppressed);
+                lastLogged = now;
+                suppressed = 0;
+            } else {
+                suppressed++;
+            }
+        }
+
+        return onError == OnError.PASSTHROUGH ? value : null;
+    }
+
+    void finish()
+    {
+        if (failures > 0) {
+            logger.warn("base58 column `{}` failed to convert {} values in this task (on_error: {})", column, failures, onError);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+
+// Digest of the UTF-8 bytes of the value, encoded instead of the value itself
+public enum HashFunction
+{
+    NONE(null, 0),
+    SHA256("SHA-256", 32),
+    SHA1("SHA-1", 20),
+    MD5("MD5", 16),
+    MURMUR3_128(null, 16); // x64 variant, seed 0, bytes in the order of Guava's HashCode.asBytes()
+
+    private final String algorithm; // MessageDigest name, null if computed here
+    private final int length;
+
+    HashFunction(String algorithm, int length)
+    {
+        this.algorithm = algorithm;
+        this.length = length;
+    }
+
+    String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    int getLength()
+    {
+        return length;
+    }
+
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+
+    @JsonCreator
+    public static HashFunction fromString(String value)
+    {
+        for (HashFunction function : values()) {
+            if (function.toString().equals(value)) {
+                return function;
+            }
+        }
+        throw new ConfigException("Unknown hash `" + value + "`. Expected none, sha256, sha1, md5 or murmur3_128");
+    }
+}
@@ -0,0 +1,32 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+
+// How the source value of an encoded column is written
+public enum InputFormat
+{
+    HEX,
+    BASE64, // standard or url-safe alphabet, padding optional
+    UUID, // canonical 8-4-4-4-12 form
+    DECIMAL; // unsigned integer
+
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+
+    @JsonCreator
+    public static InputFormat fromString(String value)
+    {
+        for (InputFormat format : values()) {
+            if (format.toString().equals(value)) {
+                return format;
+            }
+        }
+        throw new ConfigException("Unknown input_format `" + value + "`. Expected hex, base64, uuid or decimal");
+    }
+}
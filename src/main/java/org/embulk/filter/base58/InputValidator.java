@@ -0,0 +1,137 @@
+package org.embulk.filter.base58;
+
+// Checks a value before any arithmetic runs, eight characters per step: the characters are packed
+// into the bytes of a long, and every byte is range-checked at once with carry-free additions.
+final class InputValidator
+{
+    enum Validity
+    {
+        VALID,
+        INVALID,
+        EMPTY
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOWER_CASE = 0x2020202020202020L;
+    private static final long PADDING = 0x3030303030303030L; // '0' in every byte
+
+    private InputValidator()
+    {
+    }
+
+    static Validity hex(String value, int start, int end)
+    {
+        if (start >= end) {
+            return Validity.EMPTY;
+        }
+
+        int pos = start;
+        while (pos < end) {
+            // The unused bytes of the last word are padded with '0'
+            int count = Math.min(8, end - pos);
+            long word = count == 8 ? 0 : PADDING << (count * 8);
+            int ascii = 0;
+            for (int i = 0; i < count; i++) {
+                char c = value.charAt(pos + i);
+                ascii |= c;
+                word |= (long) c << (i * 8);
+            }
+            if (ascii >= 0x80) {
+                return Validity.INVALID;
+            }
+
+            // '0'-'9', or 'a'-'f' once upper case letters are folded into lower case
+            long digits = between(word, '0', '9');
+            long letters = between(word | LOWER_CASE, 'a', 'f');
+            if ((digits | letters) != HIGH_BITS) {
+                return Validity.INVALID;
+            }
+            pos += count;
+        }
+        return Validity.VALID;
+    }
+
+    static Validity decimal(String value, int start, int end)
+    {
+        if (start >= end) {
+            return Validity.EMPTY;
+        }
+
+        int pos = start;
+        while (pos < end) {
+            int count = Math.min(8, end - pos);
+            long word = count == 8 ? 0 : PADDING << (count * 8);
+            int ascii = 0;
+            for (int i = 0; i < count; i++) {
+                char c = value.charAt(pos + i);
+                ascii |= c;
+                word |= (long) c << (i * 8);
+            }
+            if (ascii >= 0x80 || between(word, '0', '9') != HIGH_BITS) {
+                return Validity.INVALID;
+            }
+            pos += count;
+        }
+        return Validity.VALID;
+    }
+
+    // Canonical 8-4-4-4-12 form: the dashes are checked in place, and the hex groups as above
+    static Validity uuid(String value, int start, int end)
+    {
+        if (start >= end) {
+            return Validity.EMPTY;
+        }
+        if (end - start != 36
+                || value.charAt(start + 8) != '-' || value.charAt(start + 13) != '-'
+                || value.charAt(start + 18) != '-' || value.charAt(start + 23) != '-') {
+            return Validity.INVALID;
+        }
+        if (hex(value, start, start + 8) != Validity.VALID
+                || hex(value, start + 9, start + 13) != Validity.VALID
+                || hex(value, start + 14, start + 18) != Validity.VALID
+                || hex(value, start + 19, start + 23) != Validity.VALID
+                || hex(value, start + 24, end) != Validity.VALID) {
+            return Validity.INVALID;
+        }
+        return Validity.VALID;
+    }
+
+    // The alphabet has too many ranges for word tricks, so each byte goes through its decode table.
+    // Invalid entries are -1, so one sign check covers eight lookups.
+    static Validity base58(String value, int start, int end, byte[] decodeTable)
+    {
+        if (start >= end) {
+            return Validity.EMPTY;
+        }
+
+        int pos = start;
+        while (pos < end) {
+            int count = Math.min(8, end - pos);
+            int ascii = 0;
+            for (int i = 0; i < count; i++) {
+                ascii |= value.charAt(pos + i);
+            }
+            if (ascii >= 0x80) {
+                return Validity.INVALID;
+            }
+            int digits = 0;
+            for (int i = 0; i < count; i++) {
+                digits |= decodeTable[value.charAt(pos + i)];
+            }
+            if (digits < 0) {
+                return Validity.INVALID;
+            }
+            pos += count;
+        }
+        return Validity.VALID;
+    }
+
+    // High bit of every byte that lies in [low, high]. Bytes must be below 0x80, so no sum carries over.
+    private static long between(long word, int low, int high)
+    {
+        long atLeastLow = word + (0x80 - low) * ONES;
+        long aboveHigh = word + (0x7f - high) * ONES;
+        return atLeastLow & ~aboveHigh & HIGH_BITS;
+    }
+}
@@ -0,0 +1,142 @@
+package org.embulk.filter.base58;
+
+import org.embulk.config.ConfigException;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+// Where to find the ids inside a JSON column: `$.user.id`, `$.ids[*]`, `$.items[0].id`. Rewriting
+// works on the msgpack values directly. Only the maps and arrays on the way to a changed value are
+// rebuilt; everything else, including untouched siblings, is the same instance as before.
+final class JsonPath
+{
+    private static final Object EVERY_ELEMENT = new Object();
+
+    private final String path;
+    private final Object[] steps; // field name, array index, or EVERY_ELEMENT
+
+    private JsonPath(String path, Object[] steps)
+    {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    static JsonPath parse(String path)
+    {
+        List<Object> steps = new ArrayList<>();
+        int pos = path.startsWith("$") ? 1 : 0;
+        while (pos < path.length()) {
+            char c = path.charAt(pos);
+            if (c == '.') {
+                int end = pos + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == pos + 1) {
+                    throw invalid(path, "empty field name");
+                }
+                steps.add(path.substring(pos + 1, end));
+                pos = end;
+            } else if (c == '[') {
+                int end = path.indexOf(']', pos);
+                if (end < 0) {
+                    throw invalid(path, "missing ]");
+                }
+                String index = path.substring(pos + 1, end);
+                if (index.equals("*")) {
+                    steps.add(EVERY_ELEMENT);
+                } else {
+                    try {
+                        steps.add(Integer.parseInt(index));
+                    } catch (NumberFormatException e) {
+                        throw invalid(path, "expected an array index or *, got `" + index + "`");
+                    }
+                }
+                pos = end + 1;
+            } else {
+                throw invalid(path, "expected . or [ at position " + pos);
+            }
+        }
+        if (steps.isEmpty()) {
+            throw invalid(path, "no fields");
+        }
+        return new JsonPath(path, steps.toArray());
+    }
+
+    private static ConfigException invalid(String path, String reason)
+    {
+        return new ConfigException("Invalid json_path `" + path + "`: " + reason);
+    }
+
+    // Applies the function to every value the path leads to. Returns the value itself if nothing changed.
+    Value rewrite(Value value, UnaryOperator<Value> function)
+    {
+        return rewrite(value, 0, function);
+    }
+
+    private Value rewrite(Value value, int step, UnaryOperator<Value> function)
+    {
+        if (step == steps.length) {
+            return function.apply(value);
+        }
+
+        Object next = steps[step];
+        if (next instanceof String) {
+            if (!value.isMapValue()) {
+                return value;
+            }
+            Value[] keyValues = value.asMapValue().getKeyValueArray();
+            for (int i = 0; i < keyValues.length; i += 2) {
+                if (keyValues[i].isStringValue() && keyValues[i].asStringValue().asString().equals(next)) {
+                    Value rewritten = rewrite(keyValues[i + 1], step + 1, function);
+                    if (rewritten == keyValues[i + 1]) {
+                        return value;
+                    }
+                    keyValues[i + 1] = rewritten;
+                    return ValueFactory.newMap(keyValues);
+                }
+            }
+            return value;
+        }
+
+        if (!value.isArrayValue()) {
+            return value;
+        }
+        ArrayValue array = value.asArrayValue();
+        if (next == EVERY_ELEMENT) {
+            Value[] elements = null; // copied once an element changes
+            for (int i = 0; i < array.size(); i++) {
+                Value rewritten = rewrite(array.get(i), step + 1, function);
+                if (rewritten != array.get(i)) {
+                    if (elements == null) {
+                        elements = array.list().toArray(new Value[0]);
+                    }
+                    elements[i] = rewritten;
+                }
+            }
+            return elements == null ? value : ValueFactory.newArray(elements);
+        }
+
+        int index = (Integer) next;
+        if (index < 0 || index >= array.size()) {
+            return value;
+        }
+        Value rewritten = rewrite(array.get(index), step + 1, function);
+        if (rewritten == array.get(index)) {
+            return value;
+        }
+        Value[] elements = array.list().toArray(new Value[0]);
+        elements[index] = rewritten;
+        return ValueFactory.newArray(elements);
+    }
+
+    @Override
+    public String toString()
+    {
+        return path;
+    }
+}
@@ -0,0 +1,33 @@
+package org.embulk.filter.base58;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.embulk.config.ConfigException;
+
+// How the decoded value of a column is written
+public enum OutputFormat
+{
+    HEX,
+    HEX_UPPER,
+    UUID, // canonical 8-4-4-4-12 form, for values of up to 16 bytes
+    BASE64, // standard alphabet, padded
+    LONG; // unsigned 64-bit value in a long column
+
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+
+    @JsonCreator
+    public static OutputFormat fromString(String value)
+    {
+        for (OutputFormat format : values()) {
+            if (format.toString().equals(value)) {
+                return format;
+            }
+        }
+        throw new ConfigException("Unknown output_format `" + value + "`. Expected hex, hex_upper, uuid, base64 or long");
+    }
+}
@@ -0,0 +1,289 @@
+package org.embulk.filter.base58;
+
+import org.embulk.config.ConfigException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Converted values kept in a memory-mapped file across runs: an open-addressing table of fixed-size
+// slots that is never loaded into the heap. Each slot is guarded by a stamp that writers make odd
+// while they change it, so readers need no lock and treat a slot that changed under them as a miss.
+// Writers lock the store; a full probe sequence evicts one of its slots.
+//
+// Tasks of one JVM share an instance per path, which holds a lock on the file until its last user
+// releases it. Other processes that find the file locked only read it. A writer that finds other
+// settings in the file clears it in place, never shrinking it under their mappings, and readers
+// check the header after every read so that they don't return values of the new settings.
+final class PersistentConversionStore
+{
+    private static final Map<String, PersistentConversionStore> SHARED = new HashMap<>(); // guarded by itself
+
+    private static final long MAGIC = 0x4235385354524531L; // "B58STRE1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // stamp (int), key hash (int), check (int), key length (byte), value length (byte), key, value
+    private static final int SLOT_SIZE = 128;
+    private static final int PAYLOAD_OFFSET = 14;
+    private static final int MAX_PAYLOAD = SLOT_SIZE - PAYLOAD_OFFSET;
+    private static final int PROBES = 4;
+
+    private final String path;
+    private final long fingerprint;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final boolean writable;
+    private final FileChannel channel; // kept open to hold the lock
+    private int references; // guarded by SHARED
+    private final ThreadLocal<char[]> scratch = ThreadLocal.withInitial(() -> new char[MAX_PAYLOAD]);
+
+    private PersistentConversionStore(String path, long fingerprint, MappedByteBuffer buffer, int slotCount,
+                                      boolean writable, FileChannel channel)
+    {
+        this.path = path;
+        this.fingerprint = fingerprint;
+        this.buffer = buffer;
+        this.mask = slotCount - 1;
+        this.writable = writable;
+        this.channel = channel;
+    }
+
+    // A store only holds the values of one column configuration: a file written with other settings,
+    // such as another alphabet or prefix, is cleared when it's opened. Every call needs a release().
+    static PersistentConversionStore shared(String path, int sizeMb, String signature)
+    {
+        synchronized (SHARED) {
+            PersistentConversionStore store = SHARED.get(path);
+            if (store == null) {
+                store = open(path, sizeMb, signature);
+                SHARED.put(path, store);
+            } else if (store.fingerprint != fingerprint(signature, slotCount(sizeMb))) {
+                throw new ConfigException("persistent_cache_path `" + path + "` is used by base58 columns with different settings");
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    // The last release of a shared store flushes it and unlocks the file for the next job
+    void release()
+    {
+        synchronized (SHARED) {
+            if (--references == 0) {
+                SHARED.remove(path);
+                flush();
+                close();
+            }
+        }
+    }
+
+    static PersistentConversionStore open(String path, int sizeMb, String signature)
+    {
+        if (sizeMb < 1 || sizeMb > 1024) {
+            throw new ConfigException("persistent_cache_size_mb must be between 1 and 1024");
+        }
+        int slotCount = slotCount(sizeMb);
+        long fingerprint = fingerprint(signature, slotCount);
+        long fileSize = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+
+        Path file = Paths.get(path);
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // held by another instance of this JVM
+            }
+            boolean writable = lock != null;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            boolean valid = channel.size() >= fileSize
+                    && header.getLong(0) == MAGIC
+                    && header.getInt(8) == FORMAT_VERSION
+                    && header.getInt(12) == SLOT_SIZE
+                    && header.getInt(16) == slotCount
+                    && header.getLong(24) == fingerprint;
+            if (!valid && !writable) {
+                // Another process is rewriting it for other settings; run without it
+                channel.close();
+                return new PersistentConversionStore(path, fingerprint, null, 1, false, null);
+            }
+
+            // Mapping past the end grows the file with zeros, which are empty slots
+            MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (!valid) {
+                // Readers of the old settings miss from the moment the fingerprint is gone
+                buffer.putLong(24, 0);
+                for (int pos = HEADER_SIZE; pos < fileSize; pos += 8) {
+                    buffer.putLong(pos, 0);
+                }
+                buffer.putLong(0, MAGIC);
+                buffer.putInt(8, FORMAT_VERSION);
+                buffer.putInt(12, SLOT_SIZE);
+                buffer.putInt(16, slotCount);
+                buffer.putLong(24, fingerprint);
+            }
+            return new PersistentConversionStore(path, fingerprint, buffer, slotCount, writable, channel);
+        } catch (IOException e) {
+            throw new ConfigException("Can't open persistent_cache_path `" + path + "`: " + e.getMessage());
+        }
+    }
+
+    String get(String key)
+    {
+        if (buffer == null) {
+            return null;
+        }
+        int hash = key.hashCode();
+        int index = indexFor(hash);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = HEADER_SIZE + ((index + probe) & mask) * SLOT_SIZE;
+            int stamp = buffer.getInt(slot);
+            if ((stamp & 1) != 0 || buffer.getInt(slot + 4) != hash) {
+                continue;
+            }
+            String value = read(slot, key);
+            if (value != null && buffer.getInt(slot) == stamp && buffer.getLong(24) == fingerprint) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // The value, if the slot holds that key and passes its check
+    private String read(int slot, String key)
+    {
+        int keyLength = buffer.get(slot + 12) & 0xff;
+        int valueLength = buffer.get(slot + 13) & 0xff;
+        if (keyLength != key.length() || keyLength + valueLength > MAX_PAYLOAD) {
+            return null;
+        }
+        int pos = slot + PAYLOAD_OFFSET;
+        for (int i = 0; i < keyLength; i++) {
+            if ((buffer.get(pos + i) & 0xff) != key.charAt(i)) {
+                return null;
+            }
+        }
+
+        char[] chars = scratch.get();
+        pos += keyLength;
+        int check = key.hashCode();
+        for (int i = 0; i < valueLength; i++) {
+            chars[i] = (char) (buffer.get(pos + i) & 0xff);
+            check = check * 31 + chars[i];
+        }
+        if (check != buffer.getInt(slot + 8)) {
+            return null;
+        }
+        return new String(chars, 0, valueLength);
+    }
+
+    // Values that don't fit a slot, or aren't latin-1, are skipped
+    void put(String key, String value)
+    {
+        if (!writable || key.isEmpty() || key.length() + value.length() > MAX_PAYLOAD
+                || !isLatin1(key) || !isLatin1(value)) {
+            return;
+        }
+
+        int hash = key.hashCode();
+        int index = indexFor(hash);
+        synchronized (this) {
+            // An empty slot or the key's own, else evict one picked by the hash
+            int target = -1;
+            for (int probe = 0; probe < PROBES && target < 0; probe++) {
+                int slot = HEADER_SIZE + ((index + probe) & mask) * SLOT_SIZE;
+                if (buffer.get(slot + 12) == 0 || (buffer.getInt(slot + 4) == hash && read(slot, key) != null)) {
+                    target = slot;
+                }
+            }
+            if (target < 0) {
+                target = HEADER_SIZE + ((index + (hash >>> 30)) & mask) * SLOT_SIZE;
+            }
+
+            int stamp = buffer.getInt(target);
+            buffer.putInt(target, stamp + 1);
+            int check = hash;
+            int pos = target + PAYLOAD_OFFSET;
+            for (int i = 0; i < key.length(); i++) {
+                buffer.put(pos++, (byte) key.charAt(i));
+            }
+            for (int i = 0; i < value.length(); i++) {
+                buffer.put(pos++, (byte) value.charAt(i));
+                check = check * 31 + value.charAt(i);
+            }
+            buffer.putInt(target + 4, hash);
+            buffer.putInt(target + 8, check);
+            buffer.put(target + 12, (byte) key.length());
+            buffer.put(target + 13, (byte) value.length());
+            buffer.putInt(target, stamp + 2);
+        }
+    }
+
+    // Writes the changed pages back, so that an interrupted job keeps what it converted
+    void flush()
+    {
+        if (writable) {
+            buffer.force();
+        }
+    }
+
+    // Releases the file lock. The mapping stays usable until it's garbage collected, so tasks still
+    // holding the store keep working.
+    void close()
+    {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing is lost: every write went through the mapping
+            }
+        }
+    }
+
+    // The largest power of two that fits the size, so that the probe index is a mask
+    private static int slotCount(int sizeMb)
+    {
+        return Integer.highestOneBit((int) ((sizeMb * 1024L * 1024L - HEADER_SIZE) / SLOT_SIZE));
+    }
+
+    private int indexFor(int hash)
+    {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isLatin1(String s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a of the column settings and table size. Never 0, which marks a table being cleared.
+    private static long fingerprint(String signature, int slotCount)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < signature.length(); i++) {
+            h ^= signature.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= slotCount;
+        h *= 0x100000001b3L;
+        return h == 0 ? 1 : h;
+    }
+}
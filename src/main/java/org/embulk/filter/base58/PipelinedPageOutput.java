@@ -0,0 +1,140 @@
+package org.embulk.filter.base58;
+
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecSession;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Hands pages to a worker thread that converts and builds them in arrival order, so the task thread
+// can go back to reading input. The bounded queue blocks the task thread when the worker falls behind.
+final class PipelinedPageOutput implements PageOutput
+{
+    private static final Object FINISH = new Object();
+
+    private final PageOutput delegate;
+    private final BlockingQueue<Object> queue;
+    private final Thread worker;
+    private volatile Throwable failure;
+    private boolean finished;
+
+    PipelinedPageOutput(PageOutput delegate, int queueSize)
+    {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        // The worker runs in the task's session, since the downstream plugins may use Exec
+        final ExecSession session = Exec.session();
+        this.worker = new Thread(() -> {
+            try {
+                Exec.doWith(session, () -> {
+                    work();
+                    return null;
+                });
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }, "base58-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void work() throws InterruptedException
+    {
+        while (true) {
+            Object next = queue.take();
+            if (next == FINISH) {
+                delegate.finish();
+                return;
+            }
+            delegate.add((Page) next);
+        }
+    }
+
+    @Override
+    public void add(Page page)
+    {
+        try {
+            // Wakes up now and then to notice a failed worker rather than wait for space forever
+            while (!queue.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                throwIfFailed();
+            }
+        } catch (InterruptedException e) {
+            page.release();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (RuntimeException | Error e) {
+            page.release();
+            throw e;
+        }
+        throwIfFailed();
+    }
+
+    @Override
+    public void finish()
+    {
+        try {
+            while (!queue.offer(FINISH, 100, TimeUnit.MILLISECONDS)) {
+                throwIfFailed();
+            }
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        throwIfFailed();
+        finished = true;
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            if (!finished) {
+                worker.interrupt();
+                boolean interrupted = false;
+                while (worker.isAlive()) {
+                    try {
+                        worker.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            // Pages the worker never got to
+            for (Object next = queue.poll(); next != null; next = queue.poll()) {
+                if (next != FINISH) {
+                    ((Page) next).release();
+                }
+            }
+        } finally {
+            delegate.close();
+        }
+    }
+
+    // Rethrows what stopped the worker on the task thread
+    private void throwIfFailed()
+    {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new RuntimeException(t);
+    }
+}
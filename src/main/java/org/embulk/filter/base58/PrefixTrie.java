@@ -0,0 +1,71 @@
+package org.embulk.filter.base58;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Finds which of several prefixes a value starts with, in one walk over its first characters
+final class PrefixTrie
+{
+    private final Node root = new Node();
+
+    PrefixTrie(List<String> prefixes)
+    {
+        for (String prefix : prefixes) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrAdd(prefix.charAt(i));
+            }
+            node.prefix = prefix;
+        }
+    }
+
+    // The longest prefix the value starts with, or null if none does. Returns the configured
+    // String itself, so nothing is allocated.
+    String match(String value)
+    {
+        String matched = null;
+        Node node = root;
+        for (int i = 0; i < value.length(); i++) {
+            node = node.child(value.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.prefix != null) {
+                matched = node.prefix;
+            }
+        }
+        return matched;
+    }
+
+    private static final class Node
+    {
+        // Prefixes share few characters, so a short scan beats a table per node
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private String prefix; // set if a prefix ends here
+
+        Node child(char c)
+        {
+            char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrAdd(char c)
+        {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = c;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.embulk.filter.base58;
+
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.msgpack.value.ImmutableValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Pages for pushing many records through the filter, shared by the allocation tests and the page benchmark
+final class PageFixtures
+{
+    private PageFixtures()
+    {
+    }
+
+    // Input pages are released by the filter, so keep their contents on the heap and re-wrap them
+    static final class PageSnapshot
+    {
+        private final byte[] bytes;
+        private final List<String> stringReferences;
+        private final List<ImmutableValue> valueReferences;
+
+        PageSnapshot(Page page)
+        {
+            Buffer buffer = page.buffer();
+            this.bytes = Arrays.copyOfRange(buffer.array(), buffer.offset(), buffer.offset() + buffer.limit());
+            this.stringReferences = new ArrayList<>(page.getStringReferences());
+            this.valueReferences = new ArrayList<>(page.getValueReferences());
+            page.release();
+        }
+
+        Page toPage()
+        {
+            return Page.wrap(Buffer.wrap(bytes))
+                    .setStringReferences(stringReferences)
+                    .setValueReferences(valueReferences);
+        }
+    }
+
+    // Drops output pages rather than keeping them like MockPageOutput does
+    static final class DiscardPageOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.embulk.filter.base58;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.filter.base58.PageFixtures.DiscardPageOutput;
+import org.embulk.filter.base58.PageFixtures.PageSnapshot;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageTestUtils;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+import static org.junit.Assert.assertTrue;
+
+// Streams a million records through the filter and fails when the bytes allocated per record exceed
+// the budget of the column kind. The budgets leave room for JVM differences; what they catch is
+// garbage added per row or per value, like a collection built for every record.
+public class TestBase58FilterAllocations {
+
+    private static final int ROW_COUNT = 4096; // per page snapshot
+    private static final int WARMUP_RECORDS = 1 << 18;
+    private static final int MEASURED_RECORDS = 1 << 20;
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void passthroughColumns()
+    {
+        Schema inputSchema = Schema.builder()
+                .add("name", STRING)
+                .add("count", LONG)
+                .add("score", DOUBLE)
+                .add("created_at", TIMESTAMP)
+                .build();
+        Random random = new Random(58);
+        Object[] values = new Object[ROW_COUNT * 4];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            values[row * 4] = "name " + random.nextInt();
+            values[row * 4 + 1] = random.nextLong();
+            values[row * 4 + 2] = random.nextDouble();
+            values[row * 4 + 3] = Timestamp.ofEpochSecond(1400000000L + random.nextInt(100000000));
+        }
+
+        assertAllocationsPerRecord("columns: []", inputSchema, values, 128);
+    }
+
+    @Test
+    public void encodedColumn()
+    {
+        Schema inputSchema = Schema.builder().add("_id", STRING).build();
+        assertAllocationsPerRecord("columns: [{name: _id}]", inputSchema, objectIds(false), 256);
+    }
+
+    @Test
+    public void decodedColumn()
+    {
+        Schema inputSchema = Schema.builder().add("public_id", STRING).build();
+        assertAllocationsPerRecord("columns: [{name: public_id, encode: false}]", inputSchema, objectIds(true), 256);
+    }
+
+    @Test
+    public void prefixedColumns()
+    {
+        Schema inputSchema = Schema.builder().add("_id", STRING).add("public_id", STRING).build();
+        Object[] hex = objectIds(false);
+        Object[] encoded = objectIds(true);
+        Object[] values = new Object[ROW_COUNT * 2];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            values[row * 2] = hex[row];
+            values[row * 2 + 1] = "obj_" + encoded[row];
+        }
+
+        assertAllocationsPerRecord("columns: [{name: _id, prefix: obj_}, {name: public_id, encode: false, prefixes: [obj_, usr_]}]",
+                inputSchema, values, 512);
+    }
+
+    private static Object[] objectIds(boolean encoded)
+    {
+        Random random = new Random(58);
+        Object[] values = new Object[ROW_COUNT];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            String hex = String.format("%08x%08x%08x", random.nextInt(), random.nextInt(), random.nextInt());
+            values[row] = encoded ? Base58.encode(hex) : hex;
+        }
+        return values;
+    }
+
+    private void assertAllocationsPerRecord(String columns, final Schema inputSchema, Object[] values, long budget)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        List<PageSnapshot> snapshots = new ArrayList<>();
+        for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values)) {
+            snapshots.add(new PageSnapshot(page));
+        }
+
+        ConfigSource config = new ConfigLoader(Exec.getModelManager()).fromYamlString("type: base58\n" + columns + "\n");
+        final Base58FilterPlugin plugin = new Base58FilterPlugin();
+        final PageOutput[] output = new PageOutput[1];
+        plugin.transaction(config, inputSchema, (TaskSource taskSource, Schema outputSchema) ->
+                output[0] = plugin.open(taskSource, inputSchema, outputSchema, new DiscardPageOutput()));
+
+        try {
+            // Let the JIT settle first, so that allocations it would eliminate aren't counted
+            addRecords(output[0], snapshots, WARMUP_RECORDS);
+
+            long thread = Thread.currentThread().getId();
+            long before = allocations.getThreadAllocatedBytes(thread);
+            addRecords(output[0], snapshots, MEASURED_RECORDS);
+            long perRecord = (allocations.getThreadAllocatedBytes(thread) - before) / MEASURED_RECORDS;
+
+            assertTrue("allocated " + perRecord + " bytes per record, budget is " + budget + " (" + columns + ")",
+                    perRecord <= budget);
+            output[0].finish();
+        } finally {
+            output[0].close();
+        }
+    }
+
+    private static void addRecords(PageOutput output, List<PageSnapshot> snapshots, int records)
+    {
+        for (int added = 0; added < records; added += ROW_COUNT) {
+            for (PageSnapshot snapshot : snapshots) {
+                output.add(snapshot.toPage());
+            }
+        }
+    }
+}
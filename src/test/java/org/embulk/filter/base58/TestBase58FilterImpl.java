@@ -1,10 +1,14 @@
 package org.embulk.filter.base58;
 
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
 import org.embulk.EmbulkTestRuntime;
 import org.embulk.filter.base58.Base58FilterPlugin.PluginTask;
 import org.embulk.config.ConfigLoader;
 import org.embulk.config.ConfigSource;
 import org.embulk.spi.*;
+import org.embulk.spi.json.JsonParser;
 import org.embulk.spi.TestPageBuilderReader.MockPageOutput;
 import org.embulk.spi.time.Timestamp;
 import org.embulk.spi.util.Pages;
@@ -20,9 +24,18 @@ import static org.embulk.spi.type.Types.LONG;
 import static org.embulk.spi.type.Types.STRING;
 import static org.embulk.spi.type.Types.TIMESTAMP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 
 public class TestBase58FilterImpl {
 
@@ -54,22 +67,17 @@ public class TestBase58FilterImpl {
     {
         MockPageOutput output = new MockPageOutput();
         Schema outputSchema = plugin.buildOutputSchema(task, inputSchema);
-        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, output);
-        PageReader pageReader = new PageReader(inputSchema);
-        final Map<String, List<Base58FilterPlugin.Base58Column>> base58ColumnMap = Base58FilterPlugin.convertBase58ColumnListToMap(task.getColumns());
-        final Map<String, Column> outputColumnMap = Base58FilterPlugin.convertColumnListToMap(outputSchema.getColumns(), null);
+        PageOutput pageOutput = plugin.open(task.dump(), inputSchema, outputSchema, output);
 
         List<Page> pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, objects);
-        for (Page page : pages) {
-            pageReader.setPage(page);
-
-            while (pageReader.nextRecord()) {
-                plugin.setValue(base58ColumnMap, outputColumnMap, pageReader, outputSchema, pageBuilder);
-                pageBuilder.addRecord();
+        try {
+            for (Page page : pages) {
+                pageOutput.add(page);
             }
+            pageOutput.finish();
+        } finally {
+            pageOutput.close();
         }
-        pageBuilder.finish();
-        pageBuilder.close();
         return Pages.toObjects(outputSchema, output.pages);
     }
 
@@ -390,4 +398,935 @@ public class TestBase58FilterImpl {
         assertEquals("2", Base58.encode("01"));
     }
 
+    @Test
+    public void base58CheckEdgeCases()
+    {
+        // The address of the genesis block's coinbase output
+        assertEquals("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa", Base58.encodeChecked("0062e907b15cbf27d5425399ebf6f0fb50ebb88f18"));
+        assertEquals("0062e907b15cbf27d5425399ebf6f0fb50ebb88f18", Base58.decodeChecked("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa"));
+        assertEquals(null, Base58.decodeChecked("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNb"));
+        assertEquals(null, Base58.decodeChecked("I"));
+    }
+
+    @Test
+    public void fixedWidthKernelsMatchGenericPath()
+    {
+        Base58Codec codec = new Base58Codec();
+        String[] values = {
+                "54f5f8b37c158c2f12ee1c64",
+                "00f5f8b37c158c2f12ee1c64",
+                "000000000000000000000000",
+                "ffffffffffffffffffffffff",
+                "123e4567e89b12d3a456426614174000",
+                "ffffffffffffffffffffffffffffffff",
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                "0000c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"
+        };
+        for (String hex : values) {
+            // A declared width that doesn't match forces the generic path
+            int mismatch = hex.length() == 24 ? Base58Codec.UUID_WIDTH : Base58Codec.OBJECT_ID_WIDTH;
+            String encoded = codec.encode(hex, "", Base58Codec.ANY_WIDTH);
+            assertEquals(codec.encode(hex, "", mismatch), encoded);
+            assertEquals(codec.encode(hex, "", hex.length() / 2), encoded);
+            assertEquals(codec.decode(encoded, 0, encoded.length(), mismatch),
+                    codec.decode(encoded, 0, encoded.length(), Base58Codec.ANY_WIDTH));
+        }
+        assertEquals("2bzSwY8SCsogbNxZZ", codec.encode("54f5f8b37c158c2f12ee1c64", "", Base58Codec.OBJECT_ID_WIDTH));
+        assertEquals("54f5f8b37c158c2f12ee1c64", codec.decode("2bzSwY8SCsogbNxZZ", 0, 17, Base58Codec.OBJECT_ID_WIDTH));
+    }
+
+    @Test
+    public void encodingWithCache()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, cache_size: 16}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "54f5f8b37c158c2f12ee1c64",
+                "00f5f8b37c158c2f12ee1c64",
+                "54f5f8b37c158c2f12ee1c64",
+                "nope",
+                "nope");
+
+        assertEquals(5, records.size());
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(0)[0]);
+        assertEquals("123zhNEUWPr5ogRQP", records.get(1)[0]);
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(2)[0]);
+        assertEquals(null, records.get(3)[0]);
+        assertEquals(null, records.get(4)[0]);
+    }
+
+    @Test
+    public void conversionCacheEvictsWithinASet()
+    {
+        ConversionCache cache = new ConversionCache(2); // a single two-way set
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        cache.put("c", "3");
+        assertEquals(null, cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test(expected = org.embulk.config.ConfigException.class)
+    public void cacheSizeIsBounded()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, cache_size: 2000000000}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        filter(task, inputSchema, "54f5f8b37c158c2f12ee1c64");
+    }
+
+    @Test
+    public void sharedConversionCacheIsReleasedAfterItsLastUser()
+    {
+        ConversionCache first = ConversionCache.shared("released", 16);
+        ConversionCache second = ConversionCache.shared("released", 16);
+        assertSame(first, second);
+        first.put("a", "1");
+
+        first.release();
+        assertSame(second, ConversionCache.shared("released", 16));
+        second.release();
+        second.release();
+
+        ConversionCache next = ConversionCache.shared("released", 16);
+        assertNotSame(first, next);
+        assertEquals(null, next.get("a"));
+        next.release();
+    }
+
+    @Test
+    public void columnBatchMode()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "column_batch: true",
+                "columns:",
+                "  - {name: _id}",
+                "  - {name: _id, prefix: obj_, new_name: obj_id}",
+                "  - {name: public_id, encode: false}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("count", LONG)
+                .add("public_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "54f5f8b37c158c2f12ee1c64", new Long(1), "123zhNEUWPr5ogRQP",
+                null, new Long(2), null,
+                "nope", null, "I");
+
+        assertEquals(3, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals(4, record.length);
+            assertEquals("2bzSwY8SCsogbNxZZ", record[0]);
+            assertEquals(new Long(1), record[1]);
+            assertEquals("00f5f8b37c158c2f12ee1c64", record[2]);
+            assertEquals("obj_2bzSwY8SCsogbNxZZ", record[3]);
+        }
+        {
+            record = records.get(1);
+            assertEquals(null, record[0]);
+            assertEquals(new Long(2), record[1]);
+            assertEquals(null, record[2]);
+            assertEquals(null, record[3]);
+        }
+        {
+            record = records.get(2);
+            assertEquals(null, record[0]);
+            assertEquals(null, record[1]);
+            assertEquals(null, record[2]);
+            assertEquals(null, record[3]);
+        }
+    }
+
+    @Test
+    public void badValuePassesThroughOnError()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, on_error: passthrough}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "nope",
+                "54f5f8b37c158c2f12ee1c64");
+
+        assertEquals(2, records.size());
+        assertEquals("nope", records.get(0)[0]);
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(1)[0]);
+    }
+
+    @Test
+    public void badValueIsNullOnErrorNull()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, on_error: null}",
+                "  - {name: other_id, on_error: \"null\"}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("other_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "nope", "nope");
+
+        assertEquals(1, records.size());
+        assertEquals(null, records.get(0)[0]);
+        assertEquals(null, records.get(0)[1]);
+    }
+
+    @Test(expected = org.embulk.spi.DataException.class)
+    public void badValueFailsOnError()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, on_error: fail}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        filter(task, inputSchema,
+                "nope");
+    }
+
+    @Test
+    public void badValuesToleratedUntilFailAfter()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, fail_after: 2}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "nope",
+                "nope");
+        assertEquals(2, records.size());
+
+        try {
+            filter(task, inputSchema,
+                    "nope",
+                    "nope",
+                    "nope");
+            fail("expected the third failure to stop the task");
+        } catch (org.embulk.spi.DataException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectedValuesGoToDeadLetterFile() throws Exception
+    {
+        Path directory = Files.createTempDirectory("base58-dead-letter");
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "dead_letter_path_prefix: " + directory.resolve("rejected"),
+                "columns:",
+                "  - {name: _id}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        filter(task, inputSchema,
+                "nope",
+                "54f5f8b37c158c2f12ee1c64",
+                "no\"pe",
+                "\ud800nope");
+
+        Path[] files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            files = Iterables.toArray(stream, Path.class);
+        }
+        assertEquals(1, files.length);
+        List<String> lines = Files.readAllLines(files[0], StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"column\":\"_id\",\"value\":\"nope\",\"reason\":\"not a hex value\""));
+        assertTrue(lines.get(1).contains("\"value\":\"no\\\"pe\""));
+        assertTrue(lines.get(2).contains("\"value\":\"?nope\""));
+    }
+
+    @Test
+    public void encodingFromOtherInputFormats()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: uuid, input_format: uuid}",
+                "  - {name: b64, input_format: base64}",
+                "  - {name: number, input_format: decimal}");
+        Schema inputSchema = Schema.builder()
+                .add("uuid", STRING)
+                .add("b64", STRING)
+                .add("number", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "54f5f8b3-7c15-8c2f-12ee-1c6400000000", "VPX4s3wVjC8S7hxk", "26294102108594717555730291812",
+                "not-a-uuid", "VPX4s3wVjC8S7hxk==", "12e3");
+
+        assertEquals(2, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals(Base58.encode("54f5f8b37c158c2f12ee1c6400000000"), record[0]);
+            assertEquals("2bzSwY8SCsogbNxZZ", record[1]);
+            assertEquals("2bzSwY8SCsogbNxZZ", record[2]);
+        }
+        {
+            record = records.get(1);
+            assertEquals(null, record[0]);
+            assertEquals("2bzSwY8SCsogbNxZZ", record[1]);
+            assertEquals(null, record[2]);
+        }
+    }
+
+    @Test
+    public void encodingLongColumns()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "column_batch: true",
+                "columns:",
+                "  - {name: id}",
+                "  - {name: account_id, prefix: account_, new_name: public_account_id}");
+        Schema inputSchema = Schema.builder()
+                .add("id", LONG)
+                .add("account_id", LONG)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                new Long(0), new Long(1234567890123L),
+                new Long(-1), null);
+
+        assertEquals(2, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals("1", record[0]);
+            assertEquals(1234567890123L, record[1]);
+            assertEquals("account_ZRwY92z", record[2]);
+        }
+        {
+            // Negative values are read as unsigned
+            record = records.get(1);
+            assertEquals("jpXCZedGfVQ", record[0]);
+            assertEquals(null, record[1]);
+            assertEquals(null, record[2]);
+        }
+    }
+
+    @Test
+    public void decodingToOtherOutputFormats()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: upper, encode: false, output_format: hex_upper}",
+                "  - {name: b64, encode: false, output_format: base64}",
+                "  - {name: uuid, encode: false, output_format: uuid}",
+                "  - {name: id, encode: false, prefix: account_, output_format: long, new_name: account_id}");
+        Schema inputSchema = Schema.builder()
+                .add("upper", STRING)
+                .add("b64", STRING)
+                .add("uuid", STRING)
+                .add("id", STRING)
+                .build();
+        Schema outputSchema = plugin.buildOutputSchema(task, inputSchema);
+        assertEquals(LONG, outputSchema.getColumn(4).getType());
+
+        List<Object[]> records = filter(task, inputSchema,
+                "2bzSwY8SCsogbNxZZ", "2bzSwY8SCsogbNxZZ", "2bzSwY8SCsogbNxZZ", "account_ZRwY92z",
+                "2bzSwY8SCsogbNxZZ", "0OIl", "2bzSwY8SCsogbNxZZ2bzSwY8SCsogbNxZZ", "account_jpXCZedGfVR");
+
+        assertEquals(2, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals("54F5F8B37C158C2F12EE1C64", record[0]);
+            assertEquals("VPX4s3wVjC8S7hxk", record[1]);
+            assertEquals("00000000-54f5-f8b3-7c15-8c2f12ee1c64", record[2]);
+            assertEquals("account_ZRwY92z", record[3]);
+            assertEquals(1234567890123L, record[4]);
+        }
+        {
+            // Not base58, too wide for a UUID and too wide for a long
+            record = records.get(1);
+            assertEquals("54F5F8B37C158C2F12EE1C64", record[0]);
+            assertEquals(null, record[1]);
+            assertEquals(null, record[2]);
+            assertEquals(null, record[4]);
+        }
+    }
+
+    @Test
+    public void otherAlphabets()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, alphabet: flickr, new_name: flickr_id}",
+                "  - {name: _id, alphabet: ripple, new_name: ripple_id}",
+                "  - {name: ripple, alphabet: ripple, encode: false}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("ripple", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "0054f5f8b37c158c2f12ee1c64", "rpbzSAY3SU1ogb4xZZ",
+                "0054f5f8b37c158c2f12ee1c64", "0OIl");
+
+        assertEquals(2, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals("0054f5f8b37c158c2f12ee1c64", record[1]);
+            assertEquals("12AZrWx8rcSNFAnXyy", record[2]);
+            assertEquals("rpbzSAY3SU1ogb4xZZ", record[3]);
+        }
+        {
+            record = records.get(1);
+            assertEquals(null, record[1]);
+        }
+    }
+
+    @Test(expected = org.embulk.config.ConfigException.class)
+    public void alphabetMustHave58DistinctCharacters()
+    {
+        Alphabet.fromString("123456789");
+    }
+
+    @Test
+    public void base58CheckEncodingAndDecoding()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: payload, checksum: base58check}",
+                "  - {name: address, checksum: base58check, encode: false}");
+        Schema inputSchema = Schema.builder()
+                .add("payload", STRING)
+                .add("address", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "00f54a5851e9372b87810a8e60cdd2e7cfd80b6e31", "1PMycacnJaSqwwJqjawXBErnLsZ7RkXUAs",
+                "800c28fca386c7a227600b2fe50b7cae11ec86d3bf1fbe471be89827e19d72aa1d", "1PMycacnJaSqwwJqjawXBErnLsZ7RkXUAt");
+
+        assertEquals(2, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals("1PMycacnJaSqwwJqjawXBErnLsZ7RkXUAs", record[0]);
+            assertEquals("00f54a5851e9372b87810a8e60cdd2e7cfd80b6e31", record[1]);
+        }
+        {
+            // The last character is off, so the checksum doesn't match
+            record = records.get(1);
+            assertEquals("5HueCGU8rMjxEXxiPuD5BDku4MkFqeZyd4dZ1jvhTVqvbTLvyTJ", record[0]);
+            assertEquals(null, record[1]);
+        }
+    }
+
+    @Test
+    public void pipelinedConversionKeepsRecordOrder()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "pipeline_queue_size: 2",
+                "columns:",
+                "  - {name: _id}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("count", LONG)
+                .build();
+
+        // Enough records for several pages
+        Object[] values = new Object[20000 * 2];
+        for (int i = 0; i < 20000; i++) {
+            values[i * 2] = String.format("54f5f8b37c158c2f%08x", i);
+            values[i * 2 + 1] = new Long(i);
+        }
+        List<Object[]> records = filter(task, inputSchema, values);
+
+        assertEquals(20000, records.size());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(Base58.encode((String) values[i * 2]), records.get(i)[0]);
+            assertEquals(new Long(i), records.get(i)[1]);
+        }
+    }
+
+    @Test(expected = org.embulk.spi.DataException.class)
+    public void pipelinedConversionRethrowsFailures()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "pipeline_queue_size: 2",
+                "columns:",
+                "  - {name: _id, on_error: fail}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        filter(task, inputSchema, "54f5f8b37c158c2f12ee1c64", "nope");
+    }
+
+    @Test
+    public void longValuesMatchDigitByDigitConversion()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: token, new_name: encoded}",
+                "  - {name: encoded_token, encode: false}");
+        Schema inputSchema = Schema.builder()
+                .add("token", STRING)
+                .add("encoded_token", STRING)
+                .build();
+
+        // Around and well above the size where the conversions start splitting the value
+        Random random = new Random(17);
+        int[] sizes = {Base58Codec.LARGE_BYTES - 1, Base58Codec.LARGE_BYTES, 200, 1024};
+        Object[] values = new Object[sizes.length * 2];
+        String[] expected = new String[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] bytes = new byte[sizes[i]];
+            random.nextBytes(bytes);
+            bytes[0] = (byte) (bytes[0] | 0x10);
+            String hex = new BigInteger(1, bytes).toString(16);
+
+            // Plain repeated division by 58
+            StringBuilder base58 = new StringBuilder();
+            BigInteger value = new BigInteger(hex, 16);
+            BigInteger base = BigInteger.valueOf(58);
+            while (value.signum() > 0) {
+                base58.append("123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".charAt(value.mod(base).intValue()));
+                value = value.divide(base);
+            }
+            expected[i] = base58.reverse().toString();
+            values[i * 2] = hex;
+            values[i * 2 + 1] = expected[i];
+        }
+        List<Object[]> records = filter(task, inputSchema, values);
+
+        assertEquals(sizes.length, records.size());
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(values[i * 2], records.get(i)[1]);
+            assertEquals(expected[i], records.get(i)[2]);
+        }
+    }
+
+    @Test
+    public void decodingWithSeveralPrefixes()
+    {
+        for (String columnBatch : new String[] {"false", "true"}) {
+            PluginTask task = taskFromYamlString(
+                    "type: base58",
+                    "column_batch: " + columnBatch,
+                    "columns:",
+                    "  - {name: public_id, encode: false, prefixes: [acct_, usr_, u], prefix_column: kind, new_name: _id}");
+            Schema inputSchema = Schema.builder()
+                    .add("public_id", STRING)
+                    .build();
+
+            List<Object[]> records = filter(task, inputSchema,
+                    "acct_2bzSwY8SCsogbNxZZ",
+                    "usr_123zhNEUWPr5ogRQP",
+                    "2bzSwY8SCsogbNxZZ",
+                    "2bzacct_SwY8SCsogbNxZZ",
+                    null);
+
+            assertEquals(5, records.size());
+
+            Object[] record;
+            {
+                record = records.get(0);
+                assertEquals(3, record.length);
+                assertEquals("54f5f8b37c158c2f12ee1c64", record[1]);
+                assertEquals("acct_", record[2]);
+            }
+            {
+                // The longest prefix wins
+                record = records.get(1);
+                assertEquals("00f5f8b37c158c2f12ee1c64", record[1]);
+                assertEquals("usr_", record[2]);
+            }
+            {
+                record = records.get(2);
+                assertEquals("54f5f8b37c158c2f12ee1c64", record[1]);
+                assertEquals(null, record[2]);
+            }
+            {
+                // Prefixes are only stripped from the start
+                record = records.get(3);
+                assertEquals(null, record[1]);
+                assertEquals(null, record[2]);
+            }
+            {
+                record = records.get(4);
+                assertEquals(null, record[1]);
+                assertEquals(null, record[2]);
+            }
+        }
+    }
+
+    @Test
+    public void valuesAreValidatedBeforeConverting()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id}",
+                "  - {name: public_id, encode: false}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("public_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "54F5F8B37C158C2F12EE1C64", "2bzSwY8SCsogbNxZZ",
+                "54f5f8b37c158c2f12ee1c6\uff14", "2bzSwY8SCsogbNxZ\u00e9",
+                "", "2bzSwY8SCsogbNxZl");
+
+        assertEquals(3, records.size());
+
+        Object[] record;
+        {
+            record = records.get(0);
+            assertEquals("2bzSwY8SCsogbNxZZ", record[0]);
+            assertEquals("54f5f8b37c158c2f12ee1c64", record[1]);
+        }
+        {
+            // Non-ascii characters, including ones that Character.digit() would take as digits
+            record = records.get(1);
+            assertEquals(null, record[0]);
+            assertEquals(null, record[1]);
+        }
+        {
+            record = records.get(2);
+            assertEquals(null, record[0]);
+            assertEquals(null, record[1]);
+        }
+    }
+
+    @Test
+    public void sortableEncodingKeepsByteOrder()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, sortable: true, width: 12}",
+                "  - {name: _id, sortable: true, new_name: sortable_id}",
+                "  - {name: count, sortable: true}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("count", LONG)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "000000000000000000000001", new Long(1),
+                "54f5f8b37c158c2f12ee1c64", new Long(58),
+                "ffffffffffffffffffffffff", new Long(-1));
+
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            Object[] record = records.get(i);
+            assertEquals(17, ((String) record[0]).length());
+            assertEquals(record[0], record[2]);
+            assertEquals(11, ((String) record[1]).length());
+        }
+        assertEquals("11111111111111112", records.get(0)[0]);
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(1)[0]);
+        assertEquals("11111111112", records.get(0)[1]);
+        assertEquals("11111111121", records.get(1)[1]);
+        assertEquals("jpXCZedGfVQ", records.get(2)[1]);
+        for (int column = 0; column < 2; column++) {
+            assertTrue(((String) records.get(0)[column]).compareTo((String) records.get(1)[column]) < 0);
+            assertTrue(((String) records.get(1)[column]).compareTo((String) records.get(2)[column]) < 0);
+        }
+
+        PluginTask decodeTask = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, sortable: true, encode: false}");
+        Schema decodeSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+        List<Object[]> decoded = filter(decodeTask, decodeSchema,
+                records.get(0)[0], records.get(2)[0], "112bzSwY8SCsogbNxZZ");
+
+        assertEquals("000000000000000000000001", decoded.get(0)[0]);
+        assertEquals("ffffffffffffffffffffffff", decoded.get(1)[0]);
+        // No byte width encodes to 19 digits
+        assertEquals(null, decoded.get(2)[0]);
+    }
+
+
+    @Test
+    public void persistentStoreKeepsValuesAcrossRuns() throws Exception
+    {
+        String path = Files.createTempDirectory("base58-store").resolve("store").toString();
+
+        PersistentConversionStore store = PersistentConversionStore.open(path, 1, "bitcoin");
+        store.put("54f5f8b37c158c2f12ee1c64", "2bzSwY8SCsogbNxZZ");
+        store.put("caf\u00e9", "too wide \u20ac");
+        store.flush();
+        store.close();
+
+        store = PersistentConversionStore.open(path, 1, "bitcoin");
+        assertEquals("2bzSwY8SCsogbNxZZ", store.get("54f5f8b37c158c2f12ee1c64"));
+        assertEquals(null, store.get("caf\u00e9"));
+        assertEquals(null, store.get("00f5f8b37c158c2f12ee1c64"));
+        store.close();
+
+        // Other settings, e.g. another alphabet, start over. The table is cleared in place, and
+        // a store still mapping it with the old settings misses instead of reading the new values.
+        PersistentConversionStore old = store;
+        store = PersistentConversionStore.open(path, 1, "flickr");
+        assertEquals(null, store.get("54f5f8b37c158c2f12ee1c64"));
+        store.put("54f5f8b37c158c2f12ee1c64", "flickr value");
+        assertEquals(null, old.get("54f5f8b37c158c2f12ee1c64"));
+        store.close();
+    }
+
+    @Test
+    public void encodingInsideJson()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: doc, json_path: '$.items[*].id', prefix: obj_}");
+        Schema inputSchema = Schema.builder()
+                .add("doc", JSON)
+                .build();
+
+        JsonParser parser = new JsonParser();
+        List<Object[]> records = filter(task, inputSchema,
+                parser.parse("{\"items\":[{\"id\":\"54f5f8b37c158c2f12ee1c64\",\"n\":1},{\"id\":\"nope\"},{\"id\":58}],"
+                        + "\"owner\":{\"id\":\"54f5f8b37c158c2f12ee1c64\"}}"),
+                parser.parse("{\"items\":\"none\"}"));
+
+        assertEquals(2, records.size());
+        assertEquals(parser.parse("{\"items\":[{\"id\":\"obj_2bzSwY8SCsogbNxZZ\",\"n\":1},{\"id\":null},{\"id\":\"obj_21\"}],"
+                + "\"owner\":{\"id\":\"54f5f8b37c158c2f12ee1c64\"}}"), records.get(0)[0]);
+        assertEquals(parser.parse("{\"items\":\"none\"}"), records.get(1)[0]);
+    }
+
+    @Test
+    public void checksumsInsideJson()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: doc, json_path: '$.id', checksum: base58check}");
+        Schema inputSchema = Schema.builder()
+                .add("doc", JSON)
+                .build();
+
+        JsonParser parser = new JsonParser();
+        List<Object[]> records = filter(task, inputSchema,
+                parser.parse("{\"id\":12345}"),
+                parser.parse("{\"id\":\"0000000000003039\"}"),
+                parser.parse("{\"id\":18446744073709551615}"));
+
+        // Integers are checksummed as their 8 bytes, and read as unsigned like long columns
+        assertEquals(3, records.size());
+        assertEquals(parser.parse("{\"id\":\"111111R1pSM7Xu\"}"), records.get(0)[0]);
+        assertEquals(parser.parse("{\"id\":\"111111R1pSM7Xu\"}"), records.get(1)[0]);
+        assertEquals(parser.parse("{\"id\":\"5qCHTcgbQwprzjWrb\"}"), records.get(2)[0]);
+    }
+
+    @Test
+    public void hashingInsideJson()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: doc, json_path: '$.user.id', hash: sha256, prefix: u_}");
+        Schema inputSchema = Schema.builder()
+                .add("doc", JSON)
+                .build();
+
+        JsonParser parser = new JsonParser();
+        List<Object[]> records = filter(task, inputSchema,
+                parser.parse("{\"user\":{\"id\":12345}}"),
+                parser.parse("{\"user\":{\"id\":\"12345\"}}"));
+
+        // Integer ids are hashed like the same id in a string
+        assertEquals(2, records.size());
+        assertEquals(parser.parse("{\"user\":{\"id\":\"u_72gRWx4C1Egqz9xvUBCYVdgh7uLc5kmGbjXFhiknNCTW\"}}"), records.get(0)[0]);
+        assertEquals(parser.parse("{\"user\":{\"id\":\"u_72gRWx4C1Egqz9xvUBCYVdgh7uLc5kmGbjXFhiknNCTW\"}}"), records.get(1)[0]);
+    }
+
+    @Test
+    public void encodingDigests()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: email, hash: sha256}",
+                "  - {name: email, hash: murmur3_128, prefix: m_, new_name: email_murmur}");
+        Schema inputSchema = Schema.builder()
+                .add("email", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "user@example.com");
+
+        assertEquals(1, records.size());
+        assertEquals("DAiiKx9ztTvZC6YY3HA9E5nQqCr4JSCMA3bdbRGP1EGT", records.get(0)[0]);
+        assertEquals("m_YWRKjFgBsPkAY47rnGvAmw", records.get(0)[1]);
+
+        // Same digest as Guava's, whatever the characters
+        Base58Codec codec = new Base58Codec();
+        for (String value : new String[] {"", "a", "user@example.com", "caf\u00e9 \u2603 \ud83d\ude00", "0123456789abcdefX"}) {
+            byte[] digest = Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asBytes();
+            String expected = codec.encode(BaseEncoding.base64().encode(digest), InputFormat.BASE64, "", Base58Codec.ANY_WIDTH);
+            assertEquals(expected, codec.encodeHash(value, HashFunction.MURMUR3_128, ""));
+        }
+    }
+
+    @Test
+    public void idempotentEncoding()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, idempotent: true}",
+                "  - {name: obj_id, idempotent: true, prefix: obj_}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .add("obj_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "54f5f8b37c158c2f12ee1c64", "54f5f8b37c158c2f12ee1c64",
+                "2bzSwY8SCsogbNxZZ", "obj_2bzSwY8SCsogbNxZZ",
+                "n0pe", "2bzSwY8SCsogbNxZZ");
+
+        assertEquals(3, records.size());
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(0)[0]);
+        assertEquals("obj_2bzSwY8SCsogbNxZZ", records.get(0)[1]);
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(1)[0]);
+        assertEquals("obj_2bzSwY8SCsogbNxZZ", records.get(1)[1]);
+        assertEquals(null, records.get(2)[0]); // neither hex nor base58
+        assertEquals(null, records.get(2)[1]); // no prefix, and not hex
+    }
+
+    @Test
+    public void idempotentUuidsWithDashInAlphabet()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, idempotent: true, input_format: uuid, alphabet: '-0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTU'}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        List<Object[]> records = filter(task, inputSchema,
+                "123e4567-e89b-12d3-a456-426614174000",
+                "1dBeh12QRjQrdbAzTx0IGB");
+
+        // Valid base58 in this alphabet, but still a uuid
+        assertEquals(2, records.size());
+        assertEquals("1dBeh12QRjQrdbAzTx0IGB", records.get(0)[0]);
+        assertEquals("1dBeh12QRjQrdbAzTx0IGB", records.get(1)[0]);
+    }
+
+    @Test(expected = org.embulk.config.ConfigException.class)
+    public void prefixColumnNeedsPrefixes()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: public_id, encode: false, prefix_column: kind}");
+        Schema inputSchema = Schema.builder()
+                .add("public_id", STRING)
+                .build();
+
+        filter(task, inputSchema, "2bzSwY8SCsogbNxZZ");
+    }
+
+    @Test
+    public void persistentStoreIsClearedWhenWidthChanges() throws Exception
+    {
+        String path = Files.createTempDirectory("base58-store").resolve("store").toString();
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, sortable: true, width: 12, persistent_cache_path: '" + path + "'}");
+        List<Object[]> records = filter(task, inputSchema, "54f5f8b37c158c2f12ee1c64");
+        assertEquals("2bzSwY8SCsogbNxZZ", records.get(0)[0]);
+
+        // Sortable values are padded to the width, so the stored ones no longer apply
+        task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, sortable: true, width: 16, persistent_cache_path: '" + path + "'}");
+        records = filter(task, inputSchema, "54f5f8b37c158c2f12ee1c64");
+        assertEquals("111112bzSwY8SCsogbNxZZ", records.get(0)[0]);
+    }
+
+    @Test
+    public void metricsCountValues()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: base58",
+                "columns:",
+                "  - {name: _id, new_name: metrics_id, cache_size: 16}");
+        Schema inputSchema = Schema.builder()
+                .add("_id", STRING)
+                .build();
+        ColumnMetrics.drainTotals("metrics_id");
+
+        filter(task, inputSchema,
+                "54f5f8b37c158c2f12ee1c64",
+                null,
+                "54f5f8b37c158c2f12ee1c64",
+                "nope");
+
+        ColumnMetrics metrics = ColumnMetrics.drainTotals("metrics_id");
+        assertEquals(2, metrics.converted);
+        assertEquals(1, metrics.nulls);
+        assertEquals(1, metrics.failures);
+        assertEquals(1, metrics.cacheHits);
+        assertEquals(2, metrics.cacheMisses);
+        assertEquals(48, metrics.inputBytes);
+        assertEquals(34, metrics.outputBytes);
+    }
 }